@@ -0,0 +1,138 @@
+package com.kpelykh.docker.client;
+
+import com.google.common.base.Preconditions;
+import com.kpelykh.docker.client.utils.DigestingChannel;
+import com.kpelykh.docker.client.utils.ParallelContextArchiver;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A build context assembled into a tar file: the Dockerfile and the sources it ADDs,
+ * including any from outside its folder, exactly as they are uploaded for a build.
+ *
+ * The digest of the tar identifies the context. With a reproducible archiver, two
+ * contexts with the same files and contents have the same digest wherever their sources
+ * live. Closing the context deletes the tar.
+ */
+public class BuildContext implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildContext.class);
+
+    private final File tar;
+    private final String digest;
+    private final long size;
+
+    private BuildContext(File tar, String digest, long size) {
+        this.tar = tar;
+        this.digest = digest;
+        this.size = size;
+    }
+
+    /**
+     * Copies the Dockerfile and its ADD sources to a temporary folder and archives it.
+     *
+     * @param dockerFolder folder containing the Dockerfile
+     * @param archiver archiver to write the tar with
+     * @throws DockerException if the Dockerfile or one of its sources can't be read
+     */
+    public static BuildContext assemble(File dockerFolder, ParallelContextArchiver archiver) throws DockerException {
+        Preconditions.checkNotNull(dockerFolder, "Folder is null");
+        Preconditions.checkArgument(dockerFolder.exists(), "Folder %s doesn't exist", dockerFolder);
+        Preconditions.checkState(new File(dockerFolder, "Dockerfile").exists(), "Dockerfile doesn't exist in " + dockerFolder);
+
+        String archiveNameWithOutExtension = UUID.randomUUID().toString();
+        File tmpDockerContextFolder = new File(FileUtils.getTempDirectoryPath(), "docker-java-build" + archiveNameWithOutExtension);
+        File dockerFolderTar = new File(FileUtils.getTempDirectoryPath(), archiveNameWithOutExtension + ".tar");
+        boolean ok = false;
+        try {
+            File dockerFile = new File(dockerFolder, "Dockerfile");
+            List<String> dockerFileContent = FileUtils.readLines(dockerFile);
+
+            if (dockerFileContent.size() <= 0) {
+                throw new DockerException(String.format("Dockerfile %s is empty", dockerFile));
+            }
+
+            FileUtils.copyFileToDirectory(dockerFile, tmpDockerContextFolder);
+
+            for (String cmd : dockerFileContent) {
+                if (StringUtils.startsWithIgnoreCase(cmd.trim(), "ADD ")) {
+                    String addArgs[] = StringUtils.split(cmd, " \t");
+                    if (addArgs.length != 3) {
+                        throw new DockerException(String.format("Wrong format on line [%s]", cmd));
+                    }
+
+                    File src = new File(addArgs[1]);
+                    if (!src.isAbsolute()) {
+                        src = new File(dockerFolder, addArgs[1]).getCanonicalFile();
+                    }
+
+                    if (!src.exists()) {
+                        throw new DockerException(String.format("Source file %s doesnt' exist", src));
+                    }
+                    if (src.isDirectory()) {
+                        FileUtils.copyDirectory(src, tmpDockerContextFolder);
+                    } else {
+                        FileUtils.copyFileToDirectory(src, tmpDockerContextFolder);
+                    }
+                }
+            }
+
+            FileOutputStream out = new FileOutputStream(dockerFolderTar);
+            DigestingChannel channel = new DigestingChannel(out.getChannel());
+            try {
+                archiver.archive(tmpDockerContextFolder, channel);
+            } finally {
+                channel.close();
+            }
+            if (archiver.getDeduplicatedBytes() > 0) {
+                LOGGER.debug("Build context deduplication saved {} bytes", archiver.getDeduplicatedBytes());
+            }
+            ok = true;
+            return new BuildContext(dockerFolderTar, channel.getDigest(), channel.getSize());
+        } catch (IOException ex) {
+            throw new DockerException("Error occurred while preparing Docker context folder.", ex);
+        } finally {
+            FileUtils.deleteQuietly(tmpDockerContextFolder);
+            if (!ok) {
+                FileUtils.deleteQuietly(dockerFolderTar);
+            }
+        }
+    }
+
+    /**
+     * @return the tar of the context
+     */
+    public File getTar() {
+        return tar;
+    }
+
+    /**
+     * @return the digest of the tar, as "sha256:" followed by lower-case hex
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return size of the tar in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Deletes the tar.
+     */
+    public void close() {
+        FileUtils.deleteQuietly(tar);
+    }
+}
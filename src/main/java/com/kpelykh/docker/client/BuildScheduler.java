@@ -0,0 +1,392 @@
+package com.kpelykh.docker.client;
+
+import com.kpelykh.docker.client.model.BuildEvent;
+import com.kpelykh.docker.client.utils.BuildEventReader;
+import com.kpelykh.docker.client.utils.DaemonThreadFactory;
+import com.kpelykh.docker.client.utils.ParallelContextArchiver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Queues builds for a set of daemons, running at most a fixed number at a time on each.
+ *
+ * Queued builds start in order of priority, then of submission, on the daemon with the
+ * most free slots. Each submitted context is assembled once, off the calling thread, into
+ * a reproducible tar of the Dockerfile and every source it ADDs, including sources from
+ * outside its folder. Builds are keyed by the digest of that tar: a build submitted while
+ * an identical one is queued or running joins it, and gets the same image, tagged with
+ * its own tag. A joining build still reads its own sources to compute the key, but its
+ * tar is deleted without being uploaded; the first build's tar is the one that is sent.
+ */
+public class BuildScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildScheduler.class);
+
+    private final List<Daemon> daemons = new ArrayList<Daemon>();
+    private final PriorityQueue<Build> queue = new PriorityQueue<Build>();
+    private final Map<String, Build> builds = new HashMap<String, Build>();
+    private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("docker-java-build"));
+    private long submitted = 0;
+    private boolean shutdown = false;
+
+    /**
+     * @param client a daemon to run builds on
+     * @param maxConcurrentBuilds the most builds to run on it at once
+     */
+    public synchronized BuildScheduler addDaemon(DockerClient client, int maxConcurrentBuilds) {
+        if (maxConcurrentBuilds < 1) {
+            throw new IllegalArgumentException("maxConcurrentBuilds must be positive");
+        }
+        daemons.add(new Daemon(client, maxConcurrentBuilds));
+        dispatch();
+        return this;
+    }
+
+    /**
+     * Queues a build. The context is assembled in the background, and the build joins the
+     * queue once it has been; errors reading the context are reported through the result.
+     *
+     * @param dockerFolder directory holding the Dockerfile
+     * @param tag repository and optional tag for the image, or null
+     * @param noCache whether to build without the daemon's cache
+     * @param priority builds with higher priority start first
+     * @return the result, available when the build has finished and the image is tagged
+     * @throws RejectedExecutionException if the scheduler has been shut down
+     */
+    public Future<Result> submit(final File dockerFolder, final String tag, final boolean noCache, final int priority) {
+        final Job job = new Job(tag);
+        final long sequence;
+        synchronized (this) {
+            checkRunning();
+            sequence = submitted++;
+            executor.submit(new Runnable() {
+                public void run() {
+                    enqueue(job, dockerFolder, noCache, priority, sequence);
+                }
+            });
+        }
+        return job.result;
+    }
+
+    /**
+     * @return number of builds waiting for a free daemon, not counting contexts still
+     *         being assembled
+     */
+    public synchronized int getQueuedBuilds() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the worker threads once the running builds have finished. Builds that have not
+     * started fail with a {@link DockerException}, and later submissions are rejected.
+     */
+    public void shutdown() {
+        List<Build> cancelled = new ArrayList<Build>();
+        synchronized (this) {
+            shutdown = true;
+            Build build;
+            while ((build = queue.poll()) != null) {
+                builds.remove(build.key);
+                cancelled.add(build);
+            }
+            executor.shutdown();
+        }
+        if (!cancelled.isEmpty()) {
+            LOGGER.debug("Shutdown cancels {} queued builds", cancelled.size());
+        }
+        for (Build build : cancelled) {
+            build.context.close();
+            for (Job job : build.jobs) {
+                job.result.fail(shutdownFailure());
+            }
+        }
+    }
+
+    private synchronized void checkRunning() {
+        if (shutdown) {
+            throw new RejectedExecutionException("Build scheduler has been shut down");
+        }
+    }
+
+    private static DockerException shutdownFailure() {
+        return new DockerException("Build scheduler was shut down before the build started");
+    }
+
+    /**
+     * Assembles the context of a submitted build, then queues it or joins it to an
+     * identical build.
+     */
+    private void enqueue(Job job, File dockerFolder, boolean noCache, int priority, long sequence) {
+        BuildContext context;
+        try {
+            context = BuildContext.assemble(dockerFolder, new ParallelContextArchiver().setReproducible(true));
+        } catch (Throwable e) {
+            job.result.fail(e);
+            return;
+        }
+        String key = noCache ? context.getDigest() + ";nocache" : context.getDigest();
+
+        boolean queued = false;
+        boolean rejected;
+        synchronized (this) {
+            rejected = shutdown;
+            if (!rejected) {
+                Build build = builds.get(key);
+                if (build == null) {
+                    build = new Build(key, dockerFolder, context, job.tag, noCache, priority, sequence);
+                    builds.put(key, build);
+                    queue.add(build);
+                    queued = true;
+                    build.jobs.add(job);
+                } else if (build.daemon == null && sequence < build.sequence) {
+                    // contexts are assembled in parallel; the earliest submission still owns the build
+                    LOGGER.debug("Build of {} takes over an identical build of {}", dockerFolder, build.dockerFolder);
+                    queue.remove(build);
+                    build.tag = job.tag;
+                    build.sequence = sequence;
+                    build.priority = Math.max(priority, build.priority);
+                    build.jobs.add(0, job);
+                    queue.add(build);
+                } else {
+                    LOGGER.debug("Build of {} joins an identical build of {}", dockerFolder, build.dockerFolder);
+                    if (build.daemon == null && priority > build.priority) {
+                        queue.remove(build);
+                        build.priority = priority;
+                        queue.add(build);
+                    }
+                    build.jobs.add(job);
+                }
+                dispatch();
+            }
+        }
+        if (!queued) {
+            context.close();
+        }
+        if (rejected) {
+            job.result.fail(shutdownFailure());
+        }
+    }
+
+    /**
+     * Starts queued builds while there are free slots. Must hold the lock.
+     */
+    private void dispatch() {
+        while (!queue.isEmpty()) {
+            Daemon daemon = null;
+            for (Daemon candidate : daemons) {
+                if (candidate.freeSlots() > 0 && (daemon == null || candidate.freeSlots() > daemon.freeSlots())) {
+                    daemon = candidate;
+                }
+            }
+            if (daemon == null || shutdown) {
+                return;
+            }
+            final Build build = queue.poll();
+            build.daemon = daemon;
+            daemon.running++;
+            executor.submit(new Runnable() {
+                public void run() {
+                    runBuild(build);
+                }
+            });
+        }
+    }
+
+    private void runBuild(Build build) {
+        DockerClient client = build.daemon.client;
+        String imageId = null;
+        List<BuildEvent> steps = Collections.emptyList();
+        Throwable failure = null;
+        try {
+            BuildEventReader events = client.buildEvents(build.context, build.tag, build.noCache);
+            try {
+                String error = null;
+                while (events.hasNext()) {
+                    BuildEvent event = events.next();
+                    if (event.getType() == BuildEvent.Type.SUCCESS) {
+                        imageId = event.getId();
+                    } else if (event.getType() == BuildEvent.Type.ERROR) {
+                        error = event.getMessage();
+                    }
+                }
+                steps = events.getSteps();
+                if (imageId == null || error != null) {
+                    failure = new DockerException(String.format("Build of %s failed: %s", build.dockerFolder, error));
+                }
+            } finally {
+                events.close();
+            }
+        } catch (Throwable e) {
+            // errors too, so that the slot is freed and no job is left waiting
+            failure = e;
+        }
+
+        List<Job> jobs;
+        synchronized (this) {
+            builds.remove(build.key);
+            build.daemon.running--;
+            jobs = new ArrayList<Job>(build.jobs);
+            dispatch();
+        }
+        build.context.close();
+
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            if (failure != null) {
+                job.result.fail(failure);
+                continue;
+            }
+            try {
+                if (i > 0 && job.tag != null && !job.tag.equals(build.tag)) {
+                    tag(client, imageId, job.tag);
+                }
+                job.result.succeed(new Result(imageId, client, steps, i > 0));
+            } catch (Exception e) {
+                job.result.fail(e);
+            }
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    private static void tag(DockerClient client, String imageId, String name) throws DockerException {
+        // the tag follows the last colon, unless that colon belongs to a registry host:port
+        int colon = name.lastIndexOf(':');
+        if (colon > name.lastIndexOf('/')) {
+            client.tag(imageId, name.substring(0, colon), name.substring(colon + 1), true);
+        } else {
+            client.tag(imageId, name, null, true);
+        }
+    }
+
+    /**
+     * The outcome of a submitted build.
+     */
+    public static class Result {
+        private final String imageId;
+        private final DockerClient daemon;
+        private final List<BuildEvent> steps;
+        private final boolean shared;
+
+        Result(String imageId, DockerClient daemon, List<BuildEvent> steps, boolean shared) {
+            this.imageId = imageId;
+            this.daemon = daemon;
+            this.steps = steps;
+            this.shared = shared;
+        }
+
+        public String getImageId() {
+            return imageId;
+        }
+
+        /**
+         * @return the daemon the image was built on
+         */
+        public DockerClient getDaemon() {
+            return daemon;
+        }
+
+        /**
+         * @return the completed steps of the build, with their timings
+         */
+        public List<BuildEvent> getSteps() {
+            return steps;
+        }
+
+        /**
+         * @return whether this job joined a build submitted by another job
+         */
+        public boolean isShared() {
+            return shared;
+        }
+    }
+
+    private static class Daemon {
+        final DockerClient client;
+        final int maxConcurrentBuilds;
+        int running = 0;
+
+        Daemon(DockerClient client, int maxConcurrentBuilds) {
+            this.client = client;
+            this.maxConcurrentBuilds = maxConcurrentBuilds;
+        }
+
+        int freeSlots() {
+            return maxConcurrentBuilds - running;
+        }
+    }
+
+    private static class Build implements Comparable<Build> {
+        final String key;
+        final File dockerFolder;
+        final BuildContext context;
+        final boolean noCache;
+        String tag;
+        long sequence;
+        final List<Job> jobs = new ArrayList<Job>();
+        int priority;
+        Daemon daemon;
+
+        Build(String key, File dockerFolder, BuildContext context, String tag, boolean noCache, int priority, long sequence) {
+            this.key = key;
+            this.dockerFolder = dockerFolder;
+            this.context = context;
+            this.tag = tag;
+            this.noCache = noCache;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(Build other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private static class Job {
+        final String tag;
+        final Promise<Result> result = new Promise<Result>();
+
+        Job(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * A future that is completed from outside.
+     */
+    private static class Promise<V> extends FutureTask<V> {
+        Promise() {
+            super(new Callable<V>() {
+                public V call() {
+                    throw new IllegalStateException("Completed by the scheduler");
+                }
+            });
+        }
+
+        void succeed(V value) {
+            set(value);
+        }
+
+        void fail(Throwable failure) {
+            setException(failure);
+        }
+    }
+}
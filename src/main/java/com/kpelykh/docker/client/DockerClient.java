@@ -2,18 +2,34 @@ package com.kpelykh.docker.client;
 
 import com.google.common.base.Preconditions;
 import com.kpelykh.docker.client.model.*;
-import com.kpelykh.docker.client.utils.CompressArchiveUtil;
+import com.kpelykh.docker.client.utils.BuildEventReader;
+import com.kpelykh.docker.client.utils.DigestingChannel;
+import com.kpelykh.docker.client.utils.ImageDigestIndex;
+import com.kpelykh.docker.client.utils.JsonArrayIterator;
+import com.kpelykh.docker.client.utils.JsonCodecProvider;
+import com.kpelykh.docker.client.utils.JsonProjection;
+import com.kpelykh.docker.client.utils.ObjectMapperResolver;
+import com.kpelykh.docker.client.utils.PathTemplate;
+import com.kpelykh.docker.client.utils.StringPool;
+import com.kpelykh.docker.client.utils.SummaryReader;
+import com.kpelykh.docker.client.utils.WireLoggingFilter;
 import com.kpelykh.docker.client.utils.JsonClientFilter;
+import com.kpelykh.docker.client.utils.ParallelContextArchiver;
+import com.kpelykh.docker.client.utils.ParallelGZIPOutputStream;
+import com.kpelykh.docker.client.utils.TarExtractor;
 import com.sun.jersey.api.client.*;
 import com.sun.jersey.api.client.WebResource.Builder;
 import com.sun.jersey.api.client.config.ClientConfig;
 import com.sun.jersey.api.client.config.DefaultClientConfig;
-import com.sun.jersey.api.client.filter.LoggingFilter;
 import com.sun.jersey.api.json.JSONConfiguration;
 import com.sun.jersey.client.apache4.ApacheHttpClient4;
 import com.sun.jersey.client.apache4.ApacheHttpClient4Handler;
 import com.sun.jersey.core.util.MultivaluedMapImpl;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.client.HttpClient;
 import org.apache.http.conn.scheme.PlainSocketFactory;
@@ -21,6 +37,11 @@ import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.MappingIterator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.RuntimeJsonMappingException;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 import org.slf4j.Logger;
@@ -28,11 +49,21 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.zip.Deflater;
 
 /**
  *
@@ -44,14 +75,67 @@ public class DockerClient
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DockerClient.class);
 
+    private static final int STREAMING_CHUNK_SIZE = 64 * 1024;
+
+    private static final int STRING_POOL_SIZE = 4096;
+
+    // per-id endpoints get a resource for the expanded path rather than path() on a cached
+    // root resource: path() goes through a UriBuilder and allocates more per call than
+    // parsing the whole URI once
+    private static final PathTemplate CONTAINER_ATTACH_PATH = new PathTemplate("/containers/%s/attach");
+    private static final PathTemplate CONTAINER_CHANGES_PATH = new PathTemplate("/containers/%s/changes");
+    private static final PathTemplate CONTAINER_COPY_PATH = new PathTemplate("/containers/%s/copy");
+    private static final PathTemplate CONTAINER_EXPORT_PATH = new PathTemplate("/containers/%s/export");
+    private static final PathTemplate CONTAINER_JSON_PATH = new PathTemplate("/containers/%s/json");
+    private static final PathTemplate CONTAINER_KILL_PATH = new PathTemplate("/containers/%s/kill");
+    private static final PathTemplate CONTAINER_PATH = new PathTemplate("/containers/%s");
+    private static final PathTemplate CONTAINER_RESTART_PATH = new PathTemplate("/containers/%s/restart");
+    private static final PathTemplate CONTAINER_START_PATH = new PathTemplate("/containers/%s/start");
+    private static final PathTemplate CONTAINER_STOP_PATH = new PathTemplate("/containers/%s/stop");
+    private static final PathTemplate CONTAINER_WAIT_PATH = new PathTemplate("/containers/%s/wait");
+    private static final PathTemplate IMAGE_GET_PATH = new PathTemplate("/images/%s/get");
+    private static final PathTemplate IMAGE_JSON_PATH = new PathTemplate("/images/%s/json");
+    private static final PathTemplate IMAGE_PATH = new PathTemplate("/images/%s");
+    private static final PathTemplate IMAGE_TAG_PATH = new PathTemplate("/images/%s/tag");
+
+    private static final GenericType<List<SearchItem>> SEARCH_ITEM_LIST = new GenericType<List<SearchItem>>() {};
+    private static final GenericType<List<Image>> IMAGE_LIST = new GenericType<List<Image>>() {};
+    private static final GenericType<List<Container>> CONTAINER_LIST = new GenericType<List<Container>>() {};
+    private static final GenericType<List<ChangeLog>> CHANGE_LOG_LIST = new GenericType<List<ChangeLog>>() {};
+
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper()
+            .configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
     private static DockerClient instance;
     private Client client;
     private String restEndpointUrl;
+    // shared by all requests to endpoints without path or query parameters
+    private final WebResource infoResource;
+    private final WebResource listImagesResource;
+    private final WebResource createImageResource;
+    private final WebResource loadImageResource;
+    private final WebResource searchImagesResource;
+    private final WebResource listContainersResource;
+    private final WebResource commitResource;
+    private final WebResource buildResource;
+    private final WebResource versionResource;
+    private final WebResource vizResource;
+    private final WebResource createContainerResource;
+    private boolean reproducibleBuildContext = false;
+    private boolean deduplicateBuildContext = false;
+    private boolean sparseBuildContext = false;
+    private ImageDigestIndex importIndex;
+    private final ObjectMapperResolver objectMapperResolver = new ObjectMapperResolver();
+    private final JsonCodecProvider jsonCodecProvider = new JsonCodecProvider();
+    private final WireLoggingFilter wireLogger = new WireLoggingFilter();
+    private final SummaryReader summaryReader = new SummaryReader(new StringPool(STRING_POOL_SIZE));
 
     public DockerClient(String serverUrl) {
         restEndpointUrl = serverUrl + "/v1.8";
         ClientConfig clientConfig = new DefaultClientConfig();
         clientConfig.getFeatures().put(JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE);
+        clientConfig.getSingletons().add(objectMapperResolver);
+        clientConfig.getSingletons().add(jsonCodecProvider);
 
         SchemeRegistry schemeRegistry = new SchemeRegistry();
         schemeRegistry.register(new Scheme("http", 4243, PlainSocketFactory.getSocketFactory()));
@@ -69,7 +153,122 @@ public class DockerClient
         //client = new UnixSocketClient(clientConfig);
 
         client.addFilter(new JsonClientFilter());        
-        client.addFilter(new LoggingFilter());
+        client.addFilter(wireLogger);
+
+        // resources pick up the client's filters when created, so these come last
+        infoResource = client.resource(restEndpointUrl + "/info");
+        versionResource = client.resource(restEndpointUrl + "/version");
+        vizResource = client.resource(restEndpointUrl + "/images/viz");
+        createContainerResource = client.resource(restEndpointUrl + "/containers/create");
+        listImagesResource = client.resource(restEndpointUrl + "/images/json");
+        createImageResource = client.resource(restEndpointUrl + "/images/create");
+        loadImageResource = client.resource(restEndpointUrl + "/images/load");
+        searchImagesResource = client.resource(restEndpointUrl + "/images/search");
+        listContainersResource = client.resource(restEndpointUrl + "/containers/json");
+        commitResource = client.resource(restEndpointUrl + "/commit");
+        buildResource = client.resource(restEndpointUrl + "/build");
+        // stream these uploads rather than letting the http client buffer them in memory;
+        // resources derived with query parameters get a copy of the property
+        loadImageResource.setProperty(ClientConfig.PROPERTY_CHUNKED_ENCODING_SIZE, STREAMING_CHUNK_SIZE);
+        buildResource.setProperty(ClientConfig.PROPERTY_CHUNKED_ENCODING_SIZE, STREAMING_CHUNK_SIZE);
+    }
+
+    /**
+     * Leave null and default-valued fields out of request bodies, and null parameters out
+     * of commit requests. The daemon treats a missing field as its zero value, which all
+     * the model defaults are.
+     */
+    public void setCompactRequests(boolean compactRequests) {
+        objectMapperResolver.setCompactRequests(compactRequests);
+    }
+
+    public boolean isCompactRequests() {
+        return objectMapperResolver.isCompactRequests();
+    }
+
+    /**
+     * @return the filter that logs requests and responses, for setting sample rates and
+     *         the entity size limit; it logs nothing unless "com.kpelykh.docker.client.wire"
+     *         is at DEBUG
+     */
+    public WireLoggingFilter getWireLogger() {
+        return wireLogger;
+    }
+
+    /**
+     * Encode and decode JSON entities with the given codec, for the types it handles. Set
+     * it before making requests; null goes back to Jersey's Jackson mapping for all types.
+     *
+     * @see com.kpelykh.docker.client.utils.StreamingJsonCodec
+     */
+    public void setJsonCodec(JsonCodec jsonCodec) {
+        jsonCodecProvider.setCodec(jsonCodec);
+    }
+
+    public JsonCodec getJsonCodec() {
+        return jsonCodecProvider.getCodec();
+    }
+
+    /**
+     * Archive build contexts reproducibly: entries sorted by name, with fixed modification
+     * times and owners, so identical sources upload identical bytes and hit the daemon's
+     * build cache. Files added to the image get the normalized metadata.
+     */
+    public void setReproducibleBuildContext(boolean reproducibleBuildContext) {
+        this.reproducibleBuildContext = reproducibleBuildContext;
+    }
+
+    public boolean isReproducibleBuildContext() {
+        return reproducibleBuildContext;
+    }
+
+    /**
+     * Store files with identical contents once per build context and send later copies as
+     * hard links. The daemon extracts them as hard links too, so this is only safe when
+     * the Dockerfile doesn't modify the copies in place.
+     */
+    public void setDeduplicateBuildContext(boolean deduplicateBuildContext) {
+        this.deduplicateBuildContext = deduplicateBuildContext;
+    }
+
+    public boolean isDeduplicateBuildContext() {
+        return deduplicateBuildContext;
+    }
+
+    /**
+     * Send large build context files that are mostly holes, such as preallocated database
+     * files, as PAX sparse entries holding only their data. The daemon must be built with
+     * a Go version whose archive/tar reads sparse entries.
+     */
+    public void setSparseBuildContext(boolean sparseBuildContext) {
+        this.sparseBuildContext = sparseBuildContext;
+    }
+
+    public boolean isSparseBuildContext() {
+        return sparseBuildContext;
+    }
+
+    /**
+     * Record the SHA-256 digest of every imported tar with the id of the resulting image.
+     * Importing a tar file whose content was imported before then only tags the existing
+     * image, without uploading it, as long as the daemon still has the image.
+     *
+     * A file is matched by content: a copy or a re-download of an imported tar is found
+     * too, as is a file with the content of an earlier stream import. Finding the digest
+     * of a file costs a full read of it before the upload, except for a path that was
+     * imported or looked up before and whose size and modification time are unchanged.
+     * Files that do have to be uploaded still go with sendfile over TCP. Imports from an
+     * InputStream record their digest, for later file imports, but are never skipped
+     * themselves, since the stream has been read by the time its digest is known.
+     *
+     * @param importIndex the index to use, or null to disable
+     */
+    public void setImportIndex(ImageDigestIndex importIndex) {
+        this.importIndex = importIndex;
+    }
+
+    public ImageDigestIndex getImportIndex() {
+        return importIndex;
     }
 
     /**
@@ -78,7 +277,7 @@ public class DockerClient
      **/
 
     public Info info() throws DockerException {
-        WebResource webResource = client.resource(restEndpointUrl + "/info");
+        WebResource webResource = infoResource;
 
         try {
             LOGGER.trace("GET: {}", webResource);
@@ -94,7 +293,7 @@ public class DockerClient
 
 
     public Version version() throws DockerException {
-        WebResource webResource = client.resource(restEndpointUrl + "/version");
+        WebResource webResource = versionResource;
 
         try {
             LOGGER.trace("GET: {}", webResource);
@@ -137,7 +336,7 @@ public class DockerClient
         params.add("fromImage", repository);
         params.add("registry", registry);
 
-        WebResource webResource = client.resource(restEndpointUrl + "/images/create").queryParams(params);
+        WebResource webResource = createImageResource.queryParams(params);
 
         try {
             LOGGER.trace("POST: {}", webResource);
@@ -152,7 +351,9 @@ public class DockerClient
     }
 
     /**
-     * Create an image by importing the given stream of a tar file.
+     * Create an image by importing the given stream of a tar file. With an import index set,
+     * the digest of the stream is recorded, but a stream is never matched against the index
+     * to skip its upload.
      *
      * @param repository the repository to import to
      * @param tag any tag for this image
@@ -164,12 +365,25 @@ public class DockerClient
         Preconditions.checkNotNull(repository, "Repository was not specified");
         Preconditions.checkNotNull(imageStream, "imageStream was not provided");
 
+        if (importIndex == null) {
+            return postImport(repository, tag, imageStream);
+        }
+        DigestingChannel digest = DigestingChannel.discarding();
+        ImageCreateResponse response = postImport(repository, tag, new TeeInputStream(imageStream, Channels.newOutputStream(digest)));
+        recordImport(null, digest.getDigest(), response);
+        return response;
+    }
+
+    private ImageCreateResponse postImport(String repository, String tag, InputStream imageStream) throws DockerException {
+
         MultivaluedMap<String,String> params = new MultivaluedMapImpl();
         params.add("repo", repository);
         params.add("tag", tag);
         params.add("fromSrc","-");
 
-        WebResource webResource = client.resource(restEndpointUrl + "/images/create").queryParams(params);
+        WebResource webResource = createImageResource.queryParams(params);
+        // multi-GB images must stream instead of being buffered in memory by the http client
+        webResource.setProperty(ClientConfig.PROPERTY_CHUNKED_ENCODING_SIZE, STREAMING_CHUNK_SIZE);
 
         try {
             LOGGER.trace("POST: {}", webResource);
@@ -184,10 +398,362 @@ public class DockerClient
         }
     }
 
+    /**
+     * Create an image by importing the given tar file.
+     *
+     * @see #importImage(String, String, FileChannel, ProgressListener)
+     */
+    public ImageCreateResponse importImage(String repository, String tag, File imageTar) throws DockerException {
+        return importImage(repository, tag, imageTar, null);
+    }
+
+    /**
+     * Create an image by importing the given tar file. With an import index set, the upload
+     * is skipped when a tar with the same content was imported before; see
+     * {@link #setImportIndex}.
+     *
+     * @see #importImage(String, String, FileChannel, ProgressListener)
+     */
+    public ImageCreateResponse importImage(String repository, String tag, File imageTar, ProgressListener listener) throws DockerException {
+        Preconditions.checkNotNull(repository, "Repository was not specified");
+        Preconditions.checkNotNull(imageTar, "imageTar was not provided");
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(imageTar);
+            if (importIndex == null) {
+                return importImage(repository, tag, in.getChannel(), listener);
+            }
+            String digest = importIndex.getDigest(imageTar);
+            if (digest == null) {
+                digest = digest(in.getChannel());
+            }
+            ImageCreateResponse imported = findImport(repository, tag, imageTar, digest);
+            if (imported != null) {
+                return imported;
+            }
+            ImageCreateResponse response = importImage(repository, tag, in.getChannel(), listener);
+            recordImport(imageTar, digest, response);
+            return response;
+        } catch (IOException e) {
+            throw new DockerException(e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Create an image by importing a tar from a file channel, starting at the channel's
+     * current position. Over TCP the tar is sent with sendfile, without being copied
+     * through the JVM; other transports fall back to streaming it.
+     *
+     * @param repository the repository to import to
+     * @param tag any tag for this image
+     * @param imageChannel channel positioned at the start of the tar
+     * @param listener notified of the bytes sent so far, or null
+     * @return an {@link ImageCreateResponse} containing the id of the imported image
+     * @throws DockerException if the import fails for some reason.
+     */
+    public ImageCreateResponse importImage(String repository, String tag, FileChannel imageChannel, ProgressListener listener) throws DockerException {
+        Preconditions.checkNotNull(repository, "Repository was not specified");
+        Preconditions.checkNotNull(imageChannel, "imageChannel was not provided");
+
+        MultivaluedMap<String,String> params = new MultivaluedMapImpl();
+        params.add("repo", repository);
+        params.add("tag", tag);
+        params.add("fromSrc","-");
+
+        URI uri = createImageResource.queryParams(params).getURI();
+
+        final long position;
+        final long count;
+        try {
+            position = imageChannel.position();
+            count = imageChannel.size() - position;
+        } catch (IOException e) {
+            throw new DockerException(e);
+        }
+
+        if (!SendfileRequest.isSupported(uri)) {
+            return importImage(repository, tag, new ProgressInputStream(Channels.newInputStream(imageChannel), count, listener));
+        }
+
+        SendfileRequest.Response response = null;
+        try {
+            long start = System.nanoTime();
+            response = new SendfileRequest(uri).post("application/tar", imageChannel, position, count, listener);
+            wireLogger.logExchange("POST", uri, count, response.getStatus(), (System.nanoTime() - start) / 1000000);
+            if (response.getStatus() == 500) {
+                throw new DockerException("Server error: " + IOUtils.toString(response));
+            } else if (response.getStatus() >= 300) {
+                throw new DockerException(String.format("Import failed with status %d: %s", response.getStatus(), IOUtils.toString(response)));
+            }
+            return JSON_MAPPER.readValue(response, ImageCreateResponse.class);
+        } catch (IOException e) {
+            throw new DockerException(e);
+        } finally {
+            IOUtils.closeQuietly(response);
+        }
+    }
+
+    /**
+     * @return the SHA-256 digest of the whole channel; its position is not changed
+     */
+    private static String digest(FileChannel channel) throws IOException {
+        DigestingChannel digest = DigestingChannel.discarding();
+        long size = channel.size();
+        long position = 0;
+        while (position < size) {
+            position += channel.transferTo(position, size - position, digest);
+        }
+        return digest.getDigest();
+    }
+
+    /**
+     * @return the previously imported image for a tar file with the given digest, tagged as
+     *         requested, or null if it has to be imported
+     */
+    private ImageCreateResponse findImport(String repository, String tag, File imageTar, String digest) throws DockerException {
+        String imageId = importIndex.getImageId(digest);
+        if (imageId == null) {
+            return null;
+        }
+        try {
+            inspectImage(imageId);
+        } catch (NotFoundException e) {
+            LOGGER.debug("Image {} imported from {} is gone, importing again", imageId, imageTar);
+            try {
+                importIndex.remove(digest);
+            } catch (IOException ioe) {
+                LOGGER.warn("Could not update the import index", ioe);
+            }
+            return null;
+        }
+        LOGGER.debug("{} was already imported as {}, skipping the upload", imageTar, imageId);
+        tag(imageId, repository, tag, true);
+        if (!digest.equals(importIndex.getDigest(imageTar))) {
+            // remember the path, so the next import of the unchanged file needn't hash it
+            recordImport(imageTar, digest, new ImageCreateResponse(imageId));
+        }
+        return new ImageCreateResponse(imageId);
+    }
+
+    private void recordImport(File imageTar, String digest, ImageCreateResponse response) {
+        try {
+            if (imageTar == null) {
+                importIndex.put(digest, response.getId());
+            } else {
+                importIndex.put(imageTar, digest, response.getId());
+            }
+        } catch (IOException e) {
+            // the import itself succeeded
+            LOGGER.warn("Could not update the import index", e);
+        }
+    }
+
+    /**
+     * Create an image by having the daemon download a tar from the given URL, so the
+     * image never passes through this client.
+     *
+     * @param repository the repository to import to
+     * @param tag any tag for this image
+     * @param source http(s) URL of the tar file, reachable from the daemon
+     * @param listener notified of the daemon's download progress, or null
+     * @return an {@link ImageCreateResponse} containing the id of the imported image
+     * @throws DockerException if the import fails for some reason.
+     */
+    public ImageCreateResponse importImage(String repository, String tag, URL source, ProgressListener listener) throws DockerException {
+        Preconditions.checkNotNull(repository, "Repository was not specified");
+        Preconditions.checkNotNull(source, "source was not provided");
+
+        MultivaluedMap<String,String> params = new MultivaluedMapImpl();
+        params.add("repo", repository);
+        params.add("tag", tag);
+        params.add("fromSrc", source.toString());
+
+        WebResource webResource = createImageResource.queryParams(params);
+
+        LOGGER.trace("POST: {}", webResource);
+        ClientResponse response = webResource.accept(MediaType.APPLICATION_JSON).post(ClientResponse.class);
+        try {
+            if (response.getStatus() == 500) {
+                throw new DockerException("Server error: " + response.getEntity(String.class));
+            } else if (response.getStatus() >= 300) {
+                throw new DockerException(String.format("Import failed with status %d: %s", response.getStatus(), response.getEntity(String.class)));
+            }
+            return readCreateProgress(response.getEntityInputStream(), listener);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Reads the stream of JSON messages sent while the daemon creates an image, passing
+     * download progress to the listener. The last status message holds the image id.
+     */
+    private ImageCreateResponse readCreateProgress(InputStream in, ProgressListener listener) throws DockerException {
+        try {
+            JsonNode last = null;
+            MappingIterator<JsonNode> messages = JSON_MAPPER.reader(JsonNode.class).readValues(in);
+            while (messages.hasNextValue()) {
+                JsonNode message = messages.nextValue();
+                if (message.has("error")) {
+                    throw new DockerException(message.get("error").getTextValue());
+                }
+                JsonNode detail = message.get("progressDetail");
+                if (listener != null && detail != null && detail.has("current")) {
+                    long total = detail.has("total") ? detail.get("total").getLongValue() : -1;
+                    listener.progress(detail.get("current").getLongValue(), total);
+                }
+                if (message.has("status")) {
+                    last = message;
+                }
+            }
+            if (last == null) {
+                throw new DockerException("Daemon sent no status");
+            }
+            return JSON_MAPPER.treeToValue(last, ImageCreateResponse.class);
+        } catch (IOException e) {
+            throw new DockerException(e);
+        }
+    }
+
+    /**
+     * Save an image, with its parent layers and tags, as a tar stream. The caller must
+     * close the response.
+     *
+     * @param name the image name or id
+     */
+    public ClientResponse saveImage(String name) throws DockerException, NotFoundException {
+        Preconditions.checkState(!StringUtils.isEmpty(name), "Image name can't be empty");
+
+        WebResource webResource = client.resource(IMAGE_GET_PATH.expand(restEndpointUrl, name));
+
+        LOGGER.trace("GET: {}", webResource);
+        ClientResponse response = webResource.accept(MediaType.APPLICATION_OCTET_STREAM_TYPE).get(ClientResponse.class);
+        if (response.getStatus() >= 300) {
+            try {
+                if (response.getStatus() == 404) {
+                    throw new NotFoundException(String.format("No such image %s", name));
+                } else if (response.getStatus() == 500) {
+                    throw new DockerException("Server error: " + response.getEntity(String.class));
+                } else {
+                    throw new DockerException(String.format("Save failed with status %d: %s", response.getStatus(), response.getEntity(String.class)));
+                }
+            } finally {
+                response.close();
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Save an image, with its parent layers and tags, to a tar file.
+     */
+    public TransferStats saveImage(String name, File target) throws DockerException, NotFoundException {
+        Preconditions.checkNotNull(target, "target was not provided");
+
+        FileOutputStream out = null;
+        boolean saved = false;
+        try {
+            out = new FileOutputStream(target);
+            TransferStats stats = saveImage(name, out.getChannel());
+            out.close();
+            saved = true;
+            return stats;
+        } catch (IOException e) {
+            throw new DockerException(e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (!saved) {
+                FileUtils.deleteQuietly(target);
+            }
+        }
+    }
+
+    /**
+     * Save an image, with its parent layers and tags, streaming the tar to a channel.
+     *
+     * @param target channel to write the tar to; it is left open
+     */
+    public TransferStats saveImage(String name, WritableByteChannel target) throws DockerException, NotFoundException {
+        Preconditions.checkNotNull(target, "target was not provided");
+
+        ClientResponse response = saveImage(name);
+        try {
+            TransferStats stats = transfer(response.getEntityInputStream(), target, Deflater.NO_COMPRESSION);
+            LOGGER.debug("Saved image {}: {}", name, stats);
+            return stats;
+        } catch (IOException e) {
+            throw new DockerException(e);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Load images from a tar stream produced by {@link #saveImage}. The stream is sent as
+     * it is read, not buffered.
+     */
+    public void loadImage(InputStream imageStream) throws DockerException {
+        Preconditions.checkNotNull(imageStream, "imageStream was not provided");
+
+        WebResource webResource = loadImageResource;
+
+        try {
+            LOGGER.trace("POST: {}", webResource);
+            webResource.type("application/tar").post(imageStream);
+        } catch (UniformInterfaceException exception) {
+            if (exception.getResponse().getStatus() == 500) {
+                throw new DockerException("Server error.", exception);
+            } else {
+                throw new DockerException(exception);
+            }
+        } catch (ClientHandlerException exception) {
+            throw new DockerException(exception);
+        }
+    }
+
+    /**
+     * Load images from a tar file produced by {@link #saveImage}.
+     */
+    public void loadImage(File imageTar) throws DockerException {
+        Preconditions.checkNotNull(imageTar, "imageTar was not provided");
+
+        InputStream in = null;
+        try {
+            in = FileUtils.openInputStream(imageTar);
+            loadImage(in);
+        } catch (IOException e) {
+            throw new DockerException(e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Copy an image from this daemon to many others without going through a registry.
+     * Daemons that have received the image pass it on to up to {@code fanout} more each
+     * at the same time, so the copies form a tree and the time taken grows with the
+     * logarithm of the number of targets. Nothing is staged on disk.
+     *
+     * @param name the image name or id
+     * @param targets daemons to load the image into
+     * @param fanout the number of daemons each source sends to at once
+     * @return the targets that could not be loaded, with the reason; empty if all succeeded
+     */
+    public Map<DockerClient, DockerException> propagateImage(String name, List<DockerClient> targets, int fanout) throws DockerException {
+        Preconditions.checkState(!StringUtils.isEmpty(name), "Image name can't be empty");
+        Preconditions.checkNotNull(targets, "targets were not provided");
+        Preconditions.checkArgument(fanout > 0, "fanout must be positive");
+
+        return new ImagePropagation(name, fanout).run(this, targets);
+    }
+
     public List<SearchItem> search(String search) throws DockerException {
-        WebResource webResource = client.resource(restEndpointUrl + "/images/search").queryParam("term", search);
+        WebResource webResource = searchImagesResource.queryParam("term", search);
         try {
-            return webResource.accept(MediaType.APPLICATION_JSON).get(new GenericType<List<SearchItem>>() {});
+            return webResource.accept(MediaType.APPLICATION_JSON).get(SEARCH_ITEM_LIST);
         } catch (UniformInterfaceException exception) {
             if (exception.getResponse().getStatus() == 500) {
                 throw new DockerException("Server error.", exception);
@@ -202,7 +768,7 @@ public class DockerClient
         Preconditions.checkState(!StringUtils.isEmpty(imageId), "Image ID can't be empty");
 
         try {
-            WebResource webResource = client.resource(restEndpointUrl + "/images/" + imageId);
+            WebResource webResource = client.resource(IMAGE_PATH.expand(restEndpointUrl, imageId));
             LOGGER.trace("DELETE: {}", webResource);
             webResource.delete();
         } catch (UniformInterfaceException exception) {
@@ -230,8 +796,43 @@ public class DockerClient
         }
     }
 
+    /**
+     * Tag an image into a repository.
+     *
+     * @param image the image id or name to tag
+     * @param repository the repository to tag in
+     * @param tag the new tag, or null for the default
+     * @param force replace the tag if it already points at another image
+     */
+    public void tag(String image, String repository, String tag, boolean force) throws DockerException, NotFoundException {
+        Preconditions.checkState(!StringUtils.isEmpty(image), "Image can't be empty");
+        Preconditions.checkNotNull(repository, "Repository was not specified");
+
+        MultivaluedMap<String,String> params = new MultivaluedMapImpl();
+        params.add("repo", repository);
+        params.add("tag", tag);
+        params.add("force", force ? "1" : "0");
+
+        WebResource webResource = client.resource(IMAGE_TAG_PATH.expand(restEndpointUrl, image)).queryParams(params);
+
+        try {
+            LOGGER.trace("POST: {}", webResource);
+            webResource.post();
+        } catch (UniformInterfaceException exception) {
+            if (exception.getResponse().getStatus() == 404) {
+                throw new NotFoundException(String.format("No such image %s", image));
+            } else if (exception.getResponse().getStatus() == 409) {
+                throw new DockerException("Conflict");
+            } else if (exception.getResponse().getStatus() == 500) {
+                throw new DockerException("Server error.", exception);
+            } else {
+                throw new DockerException(exception);
+            }
+        }
+    }
+
     public String getVizImages() throws DockerException {
-        WebResource webResource = client.resource(restEndpointUrl + "/images/viz");
+        WebResource webResource = vizResource;
 
         try {
             LOGGER.trace("GET: {}", webResource);
@@ -265,15 +866,11 @@ public class DockerClient
 
     public List<Image> getImages(String name, boolean allImages) throws DockerException {
 
-        MultivaluedMap<String,String> params = new MultivaluedMapImpl();
-        params.add("filter", name);
-        params.add("all", allImages ? "1" : "0");
-
-        WebResource webResource = client.resource(restEndpointUrl + "/images/json").queryParams(params);
+        WebResource webResource = imagesResource(name, allImages);
 
         try {
             LOGGER.trace("GET: {}", webResource);
-            List<Image> images = webResource.accept(MediaType.APPLICATION_JSON).get(new GenericType<List<Image>>() {});
+            List<Image> images = webResource.accept(MediaType.APPLICATION_JSON).get(IMAGE_LIST);
             LOGGER.trace("Response: {}", images);
             return images;
         } catch (UniformInterfaceException exception) {
@@ -288,9 +885,33 @@ public class DockerClient
 
     }
 
+    /**
+     * List images, decoding them one at a time as they are read. The caller must close
+     * the iterator, which also releases the connection.
+     */
+    public JsonArrayIterator<Image> iterateImages(String name, boolean allImages) throws DockerException {
+        return iterate(imagesResource(name, allImages), Image.class);
+    }
+
+    /**
+     * List images, passing them to the callback one at a time as they are read. The
+     * response is not read further once the callback returns false.
+     */
+    public void getImages(String name, boolean allImages, ListCallback<Image> callback) throws DockerException {
+        forEach(iterateImages(name, allImages), callback);
+    }
+
+    private WebResource imagesResource(String name, boolean allImages) {
+        MultivaluedMap<String,String> params = new MultivaluedMapImpl();
+        params.add("filter", name);
+        params.add("all", allImages ? "1" : "0");
+
+        return listImagesResource.queryParams(params);
+    }
+
     public ImageInspectResponse inspectImage(String imageId) throws DockerException, NotFoundException {
 
-        WebResource webResource = client.resource(restEndpointUrl + String.format("/images/%s/json", imageId));
+        WebResource webResource = client.resource(IMAGE_JSON_PATH.expand(restEndpointUrl, imageId));
 
         try {
             LOGGER.trace("GET: {}", webResource);
@@ -319,20 +940,47 @@ public class DockerClient
         return this.listContainers(allContainers, latest, -1, false, null, null);
     }
 
-    public List<Container> listContainers(boolean allContainers, boolean latest, int limit) {
-        return this.listContainers(allContainers, latest, limit, false, null, null);
+    public List<Container> listContainers(boolean allContainers, boolean latest, int limit) {
+        return this.listContainers(allContainers, latest, limit, false, null, null);
+    }
+
+    public List<Container> listContainers(boolean allContainers, boolean latest, int limit, boolean showSize) {
+        return this.listContainers(allContainers, latest, limit, showSize, null, null);
+    }
+
+    public List<Container> listContainers(boolean allContainers, boolean latest, int limit, boolean showSize, String since) {
+        return this.listContainers(allContainers, latest, limit, false, since, null);
+    }
+
+    public List<Container> listContainers(boolean allContainers, boolean latest, int limit, boolean showSize, String since, String before) {
+
+        WebResource webResource = containersResource(allContainers, latest, limit, showSize, since, before);
+        LOGGER.trace("GET: {}", webResource);
+        List<Container> containers = webResource.accept(MediaType.APPLICATION_JSON).get(CONTAINER_LIST);
+        LOGGER.trace("Response: {}", containers);
+
+        return containers;
     }
 
-    public List<Container> listContainers(boolean allContainers, boolean latest, int limit, boolean showSize) {
-        return this.listContainers(allContainers, latest, limit, showSize, null, null);
+    /**
+     * List containers, decoding them one at a time as they are read, so memory use doesn't
+     * grow with the number of containers. The caller must close the iterator, which also
+     * releases the connection.
+     */
+    public JsonArrayIterator<Container> iterateContainers(boolean allContainers, boolean latest, int limit, boolean showSize, String since, String before) throws DockerException {
+        return iterate(containersResource(allContainers, latest, limit, showSize, since, before), Container.class);
     }
 
-    public List<Container> listContainers(boolean allContainers, boolean latest, int limit, boolean showSize, String since) {
-        return this.listContainers(allContainers, latest, limit, false, since, null);
+    /**
+     * List containers, passing them to the callback one at a time as they are read. The
+     * response is not read further once the callback returns false.
+     */
+    public void listContainers(boolean allContainers, boolean latest, int limit, boolean showSize, String since, String before,
+                               ListCallback<Container> callback) throws DockerException {
+        forEach(iterateContainers(allContainers, latest, limit, showSize, since, before), callback);
     }
 
-    public List<Container> listContainers(boolean allContainers, boolean latest, int limit, boolean showSize, String since, String before) {
-
+    private WebResource containersResource(boolean allContainers, boolean latest, int limit, boolean showSize, String since, String before) {
         MultivaluedMap<String,String> params = new MultivaluedMapImpl();
         params.add("limit", latest ? "1" : String.valueOf(limit));
         params.add("all", allContainers ? "1" : "0");
@@ -340,12 +988,79 @@ public class DockerClient
         params.add("before", before);
         params.add("size", showSize ? "1" : "0");
 
-        WebResource webResource = client.resource(restEndpointUrl + "/containers/json").queryParams(params);
+        return listContainersResource.queryParams(params);
+    }
+
+    /**
+     * List containers into compact summaries, with packed ids and with repeated strings
+     * shared through this client's string pool. Worth it for listings of thousands of
+     * containers that are kept around.
+     */
+    public List<ContainerSummary> listContainerSummaries(boolean allContainers) throws DockerException {
+        ClientResponse response = getListing(containersResource(allContainers, false, -1, false, null, null));
+        try {
+            return summaryReader.readContainers(response.getEntityInputStream());
+        } catch (IOException e) {
+            throw new DockerException(e);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * List images into compact summaries, with packed ids and with repository tags shared
+     * through this client's string pool.
+     */
+    public List<ImageSummary> getImageSummaries(String name, boolean allImages) throws DockerException {
+        ClientResponse response = getListing(imagesResource(name, allImages));
+        try {
+            return summaryReader.readImages(response.getEntityInputStream());
+        } catch (IOException e) {
+            throw new DockerException(e);
+        } finally {
+            response.close();
+        }
+    }
+
+    private <T> JsonArrayIterator<T> iterate(WebResource webResource, Class<T> type) throws DockerException {
+        ClientResponse response = getListing(webResource);
+        try {
+            return new JsonArrayIterator<T>(JSON_MAPPER, response.getEntityInputStream(), type);
+        } catch (IOException e) {
+            response.close();
+            throw new DockerException(e);
+        }
+    }
+
+    private ClientResponse getListing(WebResource webResource) throws DockerException {
         LOGGER.trace("GET: {}", webResource);
-        List<Container> containers = webResource.accept(MediaType.APPLICATION_JSON).get(new GenericType<List<Container>>() {});
-        LOGGER.trace("Response: {}", containers);
+        ClientResponse response = webResource.accept(MediaType.APPLICATION_JSON).get(ClientResponse.class);
+        if (response.getStatus() >= 300) {
+            try {
+                if (response.getStatus() == 400) {
+                    throw new DockerException("bad parameter");
+                } else if (response.getStatus() == 500) {
+                    throw new DockerException("Server error: " + response.getEntity(String.class));
+                } else {
+                    throw new DockerException(String.format("Listing failed with status %d", response.getStatus()));
+                }
+            } finally {
+                response.close();
+            }
+        }
+        return response;
+    }
 
-        return containers;
+    private static <T> void forEach(JsonArrayIterator<T> items, ListCallback<T> callback) throws DockerException {
+        try {
+            while (items.hasNext() && callback.onItem(items.next())) {
+                // keep reading
+            }
+        } catch (RuntimeJsonMappingException e) {
+            throw new DockerException(e);
+        } finally {
+            IOUtils.closeQuietly(items);
+        }
     }
 
     public ContainerCreateResponse createContainer(ContainerConfig config) throws DockerException{
@@ -354,11 +1069,7 @@ public class DockerClient
 
     public ContainerCreateResponse createContainer(ContainerConfig config,String name) throws DockerException, NotFoundException {
 
-        MultivaluedMap<String,String> params = new MultivaluedMapImpl();
-        if(name != null){
-            params.add("name", name);
-        }
-        WebResource webResource = client.resource(restEndpointUrl + "/containers/create").queryParams(params);
+        WebResource webResource = name == null ? createContainerResource : createContainerResource.queryParam("name", name);
 
         try {
             LOGGER.trace("POST: {} ", webResource);
@@ -379,13 +1090,43 @@ public class DockerClient
 
     }
 
+    /**
+     * Create a container from a pre-encoded config, with its own environment and command.
+     *
+     * @param env environment for this container, or null
+     * @param cmd command for this container, or null
+     * @param name name for the container, or null
+     */
+    public ContainerCreateResponse createContainer(ContainerConfigTemplate template, String[] env, String[] cmd, String name)
+            throws DockerException, NotFoundException {
+
+        WebResource webResource = name == null ? createContainerResource : createContainerResource.queryParam("name", name);
+
+        try {
+            LOGGER.trace("POST: {} ", webResource);
+            return webResource.accept(MediaType.APPLICATION_JSON)
+                    .type(MediaType.APPLICATION_JSON)
+                    .post(ContainerCreateResponse.class, template.encode(env, cmd));
+        } catch (UniformInterfaceException exception) {
+            if (exception.getResponse().getStatus() == 404) {
+                throw new NotFoundException(String.format("%s is an unrecognized image. Please pull the image first.", template.getImage()));
+            } else if (exception.getResponse().getStatus() == 406) {
+                throw new DockerException("impossible to attach (container not running)");
+            } else if (exception.getResponse().getStatus() == 500) {
+                throw new DockerException("Server error", exception);
+            } else {
+                throw new DockerException(exception);
+            }
+        }
+    }
+
     public void startContainer(String containerId) throws DockerException {
         this.startContainer(containerId, null);
     }
 
     public void startContainer(String containerId, HostConfig hostConfig) throws DockerException, NotFoundException {
 
-        WebResource webResource = client.resource(restEndpointUrl + String.format("/containers/%s/start", containerId));
+        WebResource webResource = client.resource(CONTAINER_START_PATH.expand(restEndpointUrl, containerId));
 
         try {
             LOGGER.trace("POST: {}", webResource);
@@ -411,7 +1152,7 @@ public class DockerClient
 
     public ContainerInspectResponse inspectContainer(String containerId) throws DockerException, NotFoundException {
 
-        WebResource webResource = client.resource(restEndpointUrl + String.format("/containers/%s/json", containerId));
+        WebResource webResource = client.resource(CONTAINER_JSON_PATH.expand(restEndpointUrl, containerId));
 
         try {
             LOGGER.trace("GET: {}", webResource);
@@ -427,6 +1168,119 @@ public class DockerClient
         }
     }
 
+    /**
+     * Inspect a container, decoding only the given fields of the response, for example
+     * "State.Running" or "NetworkSettings.IPAddress". The rest of the response is skipped
+     * without being decoded.
+     */
+    public JsonProjection.Result inspectContainer(String containerId, JsonProjection fields) throws DockerException, NotFoundException {
+
+        WebResource webResource = client.resource(CONTAINER_JSON_PATH.expand(restEndpointUrl, containerId));
+
+        LOGGER.trace("GET: {}", webResource);
+        ClientResponse response = webResource.accept(MediaType.APPLICATION_JSON).get(ClientResponse.class);
+        try {
+            if (response.getStatus() == 404) {
+                throw new NotFoundException(String.format("No such container %s", containerId));
+            } else if (response.getStatus() == 500) {
+                throw new DockerException("Server error: " + response.getEntity(String.class));
+            } else if (response.getStatus() >= 300) {
+                throw new DockerException(String.format("Inspect failed with status %d", response.getStatus()));
+            }
+            return fields.read(JSON_MAPPER, response.getEntityInputStream());
+        } catch (IOException e) {
+            throw new DockerException(e);
+        } finally {
+            response.close();
+        }
+    }
+
+    public JsonProjection.Result inspectContainer(String containerId, String... fields) throws DockerException, NotFoundException {
+        return inspectContainer(containerId, new JsonProjection(fields));
+    }
+
+    /**
+     * Inspect a container, without throwing if it doesn't exist.
+     *
+     * @return the container, or no value with status 404 if there is no such container
+     * @throws StatusException on any other unexpected status
+     */
+    public DockerResult<ContainerInspectResponse> findContainer(String containerId) throws DockerException {
+        WebResource webResource = client.resource(CONTAINER_JSON_PATH.expand(restEndpointUrl, containerId));
+        LOGGER.trace("GET: {}", webResource);
+        return result(webResource.accept(MediaType.APPLICATION_JSON).get(ClientResponse.class), ContainerInspectResponse.class, 404);
+    }
+
+    /**
+     * Inspect an image, without throwing if it doesn't exist.
+     *
+     * @return the image, or no value with status 404 if there is no such image
+     * @throws StatusException on any other unexpected status
+     */
+    public DockerResult<ImageInspectResponse> findImage(String imageId) throws DockerException {
+        WebResource webResource = client.resource(IMAGE_JSON_PATH.expand(restEndpointUrl, imageId));
+        LOGGER.trace("GET: {}", webResource);
+        return result(webResource.accept(MediaType.APPLICATION_JSON).get(ClientResponse.class), ImageInspectResponse.class, 404);
+    }
+
+    /**
+     * Stop a container, reporting a missing or already stopped container by status
+     * (404 or 304) instead of logging or throwing.
+     *
+     * @throws StatusException on any other unexpected status
+     */
+    public DockerResult<Void> tryStopContainer(String containerId, int timeout) throws DockerException {
+        WebResource webResource = client.resource(CONTAINER_STOP_PATH.expand(restEndpointUrl, containerId))
+                .queryParam("t", String.valueOf(timeout));
+        LOGGER.trace("POST: {}", webResource);
+        return result(webResource.post(ClientResponse.class), Void.class, 304, 404);
+    }
+
+    /**
+     * Remove a container, reporting a missing container by status 404 instead of logging.
+     *
+     * @throws StatusException on any other unexpected status
+     */
+    public DockerResult<Void> tryRemoveContainer(String containerId, boolean removeVolumes) throws DockerException {
+        WebResource webResource = client.resource(CONTAINER_PATH.expand(restEndpointUrl, containerId))
+                .queryParam("v", removeVolumes ? "1" : "0");
+        LOGGER.trace("DELETE: {}", webResource);
+        return result(webResource.delete(ClientResponse.class), Void.class, 404);
+    }
+
+    /**
+     * Remove an image, reporting a missing image by status 404 instead of logging.
+     *
+     * @throws StatusException on any other unexpected status, such as 409 if the image is in use
+     */
+    public DockerResult<Void> tryRemoveImage(String imageId) throws DockerException {
+        WebResource webResource = client.resource(IMAGE_PATH.expand(restEndpointUrl, imageId));
+        LOGGER.trace("DELETE: {}", webResource);
+        return result(webResource.delete(ClientResponse.class), Void.class, 404);
+    }
+
+    /**
+     * Reads a 2xx response as the given type, or as no value for Void or an empty response,
+     * and the expected miss statuses as no value. Closes the response.
+     */
+    private <T> DockerResult<T> result(ClientResponse response, Class<T> type, int... missStatuses) throws StatusException {
+        try {
+            int status = response.getStatus();
+            if (status >= 200 && status < 300) {
+                T value = type == Void.class || status == 204 ? null : response.getEntity(type);
+                return new DockerResult<T>(status, value);
+            }
+            for (int miss : missStatuses) {
+                if (status == miss) {
+                    return new DockerResult<T>(status, null);
+                }
+            }
+            String body = response.hasEntity() ? response.getEntity(String.class) : "";
+            throw new StatusException(status, String.format("Unexpected status %d: %s", status, body));
+        } finally {
+            response.close();
+        }
+    }
 
     public void removeContainer(String container) throws DockerException {
         this.removeContainer(container, false);
@@ -435,7 +1289,7 @@ public class DockerClient
     public void removeContainer(String containerId, boolean removeVolumes) throws DockerException {
         Preconditions.checkState(!StringUtils.isEmpty(containerId), "Container ID can't be empty");
 
-        WebResource webResource = client.resource(restEndpointUrl + "/containers/" + containerId).queryParam("v", removeVolumes ? "1" : "0");
+        WebResource webResource = client.resource(CONTAINER_PATH.expand(restEndpointUrl, containerId)).queryParam("v", removeVolumes ? "1" : "0");
 
         try {
             LOGGER.trace("DELETE: {}", webResource);
@@ -468,7 +1322,7 @@ public class DockerClient
     }
 
     public int waitContainer(String containerId) throws DockerException, NotFoundException {
-        WebResource webResource = client.resource(restEndpointUrl + String.format("/containers/%s/wait", containerId));
+        WebResource webResource = client.resource(CONTAINER_WAIT_PATH.expand(restEndpointUrl, containerId));
 
         try {
             LOGGER.trace("POST: {}", webResource);
@@ -505,7 +1359,7 @@ public class DockerClient
             params.add("stream", "1"); // this parameter keeps stream open indefinitely
         }
 
-        WebResource webResource = client.resource(restEndpointUrl + String.format("/containers/%s/attach", containerId))
+        WebResource webResource = client.resource(CONTAINER_ATTACH_PATH.expand(restEndpointUrl, containerId))
                 .queryParams(params);
 
         try {
@@ -529,7 +1383,7 @@ public class DockerClient
         copyConfig.setResource(resource);
 
         WebResource webResource =
-            client.resource(restEndpointUrl + String.format("/containers/%s/copy", containerId));
+            client.resource(CONTAINER_COPY_PATH.expand(restEndpointUrl, containerId));
 
         try {
             LOGGER.trace("POST: " + webResource.toString());
@@ -550,13 +1404,156 @@ public class DockerClient
         }
     }
 
+    /**
+     * Export the filesystem of a container as a tar file.
+     *
+     * @see #exportContainer(String, WritableByteChannel, int)
+     */
+    public TransferStats exportContainer(String containerId, File target, int compressionLevel) throws DockerException, NotFoundException {
+        Preconditions.checkNotNull(target, "target was not provided");
+
+        FileOutputStream out = null;
+        boolean exported = false;
+        try {
+            out = new FileOutputStream(target);
+            TransferStats stats = exportContainer(containerId, out.getChannel(), compressionLevel);
+            out.close();
+            exported = true;
+            return stats;
+        } catch (IOException e) {
+            throw new DockerException(e);
+        } finally {
+            IOUtils.closeQuietly(out);
+            if (!exported) {
+                FileUtils.deleteQuietly(target);
+            }
+        }
+    }
+
+    /**
+     * Export the filesystem of a container as a tar, streamed to the channel as it arrives
+     * so memory use doesn't grow with the size of the container.
+     *
+     * @param containerId the container to export
+     * @param target channel to write the tar to; it is left open
+     * @param compressionLevel {@link Deflater#NO_COMPRESSION} to write the tar as is, otherwise
+     *                         the gzip level to compress it with on all available cores
+     * @return bytes received and written, and the rate
+     */
+    public TransferStats exportContainer(String containerId, WritableByteChannel target, int compressionLevel) throws DockerException, NotFoundException {
+        Preconditions.checkState(!StringUtils.isEmpty(containerId), "Container ID can't be empty");
+        Preconditions.checkNotNull(target, "target was not provided");
+
+        WebResource webResource = client.resource(CONTAINER_EXPORT_PATH.expand(restEndpointUrl, containerId));
+
+        LOGGER.trace("GET: {}", webResource);
+        ClientResponse response = webResource.accept(MediaType.APPLICATION_OCTET_STREAM_TYPE).get(ClientResponse.class);
+        try {
+            if (response.getStatus() == 404) {
+                throw new NotFoundException(String.format("No such container %s", containerId));
+            } else if (response.getStatus() == 500) {
+                throw new DockerException("Server error: " + response.getEntity(String.class));
+            } else if (response.getStatus() >= 300) {
+                throw new DockerException(String.format("Export failed with status %d: %s", response.getStatus(), response.getEntity(String.class)));
+            }
+            TransferStats stats = transfer(response.getEntityInputStream(), target, compressionLevel);
+            LOGGER.debug("Exported container {}: {}", containerId, stats);
+            return stats;
+        } catch (IOException e) {
+            throw new DockerException(e);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Copy a file or directory out of a container into a local directory.
+     *
+     * @see #copyFile(String, String, TarExtractor)
+     */
+    public TransferStats copyFile(String containerId, String resource, File targetDir) throws DockerException {
+        return copyFile(containerId, resource, new TarExtractor(targetDir));
+    }
+
+    /**
+     * Copy a file or directory out of a container, extracting the tar stream with the given
+     * extractor as it arrives. The copy is rooted at the last component of the resource,
+     * so copying /data/results creates results/... in the target directory.
+     *
+     * @param extractor configured with the target directory, and optionally writer threads and include patterns
+     * @return tar bytes received and bytes of file content written
+     */
+    public TransferStats copyFile(String containerId, String resource, TarExtractor extractor) throws DockerException {
+        Preconditions.checkNotNull(extractor, "extractor was not provided");
+
+        long start = System.nanoTime();
+        ClientResponse response = copyFile(containerId, resource);
+        try {
+            if (response.getStatus() == 404) {
+                throw new NotFoundException(String.format("No such container %s or resource %s", containerId, resource));
+            } else if (response.getStatus() == 500) {
+                throw new DockerException("Server error: " + response.getEntity(String.class));
+            } else if (response.getStatus() >= 300) {
+                throw new DockerException(String.format("Copy failed with status %d: %s", response.getStatus(), response.getEntity(String.class)));
+            }
+            CountingInputStream in = new CountingInputStream(response.getEntityInputStream());
+            extractor.extract(in);
+            TransferStats stats = new TransferStats(in.getByteCount(), extractor.getBytesExtracted(), System.nanoTime() - start);
+            LOGGER.debug("Copied {} files from {}:{}: {}", new Object[]{extractor.getFilesExtracted(), containerId, resource, stats});
+            return stats;
+        } catch (IOException e) {
+            throw new DockerException(e);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Stream a file or directory out of a container into a new image on another (or the
+     * same) daemon, without staging it locally. The copy tar becomes the image's root
+     * filesystem, so copying /data/results gives an image containing /results. The data
+     * passes through a single fixed-size buffer; the source is read only as fast as the
+     * destination accepts it.
+     *
+     * @param containerId the source container
+     * @param resource path of the file or directory in the source container
+     * @param destination the daemon to create the image on
+     * @param repository repository of the new image
+     * @param tag tag of the new image, or null
+     * @return bytes piped and the rate
+     */
+    public TransferStats pipeFile(String containerId, String resource, DockerClient destination, String repository, String tag) throws DockerException {
+        Preconditions.checkNotNull(destination, "destination was not provided");
+        Preconditions.checkNotNull(repository, "Repository was not specified");
+
+        long start = System.nanoTime();
+        ClientResponse response = copyFile(containerId, resource);
+        try {
+            if (response.getStatus() == 404) {
+                throw new NotFoundException(String.format("No such container %s or resource %s", containerId, resource));
+            } else if (response.getStatus() >= 300) {
+                throw new DockerException(String.format("Copy failed with status %d: %s", response.getStatus(), response.getEntity(String.class)));
+            }
+            CountingInputStream in = new CountingInputStream(response.getEntityInputStream());
+            ImageCreateResponse image = destination.importImage(repository, tag, in);
+            TransferStats stats = new TransferStats(in.getByteCount(), in.getByteCount(), System.nanoTime() - start);
+            LOGGER.debug("Piped {}:{} into image {}: {}", new Object[]{containerId, resource, image.getId(), stats});
+            return stats;
+        } catch (ClientHandlerException e) {
+            // reading the source failed while the destination was being sent to
+            throw new DockerException(e);
+        } finally {
+            response.close();
+        }
+    }
+
     public List<ChangeLog> containterDiff(String containerId) throws DockerException, NotFoundException {
 
-        WebResource webResource = client.resource(restEndpointUrl + String.format("/containers/%s/changes", containerId));
+        WebResource webResource = client.resource(CONTAINER_CHANGES_PATH.expand(restEndpointUrl, containerId));
 
         try {
             LOGGER.trace("GET: {}", webResource);
-            return webResource.accept(MediaType.APPLICATION_JSON).get(new GenericType<List<ChangeLog>>() {});
+            return webResource.accept(MediaType.APPLICATION_JSON).get(CHANGE_LOG_LIST);
         } catch (UniformInterfaceException exception) {
             if (exception.getResponse().getStatus() == 404) {
                 throw new NotFoundException(String.format("No such container %s", containerId));
@@ -577,7 +1574,7 @@ public class DockerClient
 
     public void stopContainer(String containerId, int timeout) throws DockerException {
 
-        WebResource webResource = client.resource(restEndpointUrl + String.format("/containers/%s/stop", containerId))
+        WebResource webResource = client.resource(CONTAINER_STOP_PATH.expand(restEndpointUrl, containerId))
                 .queryParam("t", String.valueOf(timeout));
 
 
@@ -599,7 +1596,7 @@ public class DockerClient
     }
 
     public void kill(String containerId) throws DockerException {
-        WebResource webResource = client.resource(restEndpointUrl + String.format("/containers/%s/kill", containerId));
+        WebResource webResource = client.resource(CONTAINER_KILL_PATH.expand(restEndpointUrl, containerId));
 
         try {
             LOGGER.trace("POST: {}", webResource);
@@ -619,7 +1616,7 @@ public class DockerClient
     }
 
     public void restart(String containerId, int timeout) throws DockerException, NotFoundException {
-        WebResource webResource = client.resource(restEndpointUrl + String.format("/containers/%s/restart", containerId));
+        WebResource webResource = client.resource(CONTAINER_RESTART_PATH.expand(restEndpointUrl, containerId));
 
         try {
             LOGGER.trace("POST: {}", webResource);
@@ -638,18 +1635,24 @@ public class DockerClient
         }
     }
 
+    private void addParam(MultivaluedMap<String,String> params, String name, String value) {
+        if (value != null || !isCompactRequests()) {
+            params.add(name, value);
+        }
+    }
+
     public String commit(CommitConfig commitConfig) throws DockerException, NotFoundException {
         Preconditions.checkNotNull(commitConfig.getContainer(), "Container ID was not specified");
 
         MultivaluedMap<String,String> params = new MultivaluedMapImpl();
         params.add("container", commitConfig.getContainer());
-        params.add("repo", commitConfig.getRepo());
-        params.add("tag", commitConfig.getTag());
-        params.add("m", commitConfig.getMessage());
-        params.add("author", commitConfig.getAuthor());
-        params.add("run", commitConfig.getRun());
+        addParam(params, "repo", commitConfig.getRepo());
+        addParam(params, "tag", commitConfig.getTag());
+        addParam(params, "m", commitConfig.getMessage());
+        addParam(params, "author", commitConfig.getAuthor());
+        addParam(params, "run", commitConfig.getRun());
 
-        WebResource webResource = client.resource(restEndpointUrl + "/commit").queryParams(params);
+        WebResource webResource = commitResource.queryParams(params);
 
         try {
             LOGGER.trace("POST: {}", webResource);
@@ -678,9 +1681,46 @@ public class DockerClient
     }
 
     public ClientResponse build(File dockerFolder, String tag, boolean noCache) throws DockerException {
-        Preconditions.checkNotNull(dockerFolder, "Folder is null");
-        Preconditions.checkArgument(dockerFolder.exists(), "Folder %s doesn't exist", dockerFolder);
-        Preconditions.checkState(new File(dockerFolder, "Dockerfile").exists(), "Dockerfile doesn't exist in " + dockerFolder);
+        return this.build(dockerFolder, tag, noCache, Deflater.NO_COMPRESSION);
+    }
+
+    /**
+     * Build an image from the given Docker context folder.
+     *
+     * @param dockerFolder folder containing the Dockerfile
+     * @param tag repository name (and optionally a tag) for the resulting image
+     * @param noCache do not use the daemon's build cache
+     * @param compressionLevel gzip level used to compress the context while it is uploaded,
+     *                         or {@link Deflater#NO_COMPRESSION} to send a plain tar
+     * @return the raw build output stream
+     * @throws DockerException if the context can't be prepared or the build fails
+     */
+    public ClientResponse build(File dockerFolder, String tag, boolean noCache, int compressionLevel) throws DockerException {
+        BuildContext context = BuildContext.assemble(dockerFolder, new ParallelContextArchiver()
+                .setReproducible(reproducibleBuildContext)
+                .setDeduplicate(deduplicateBuildContext)
+                .setSparse(sparseBuildContext));
+        try {
+            return build(context, tag, noCache, compressionLevel);
+        } finally {
+            context.close();
+        }
+    }
+
+    /**
+     * Build an image from a context that is already assembled. The context is left for the
+     * caller to close, so it can be uploaded again, e.g. to another daemon.
+     *
+     * @param context the assembled Dockerfile and sources
+     * @param tag repository name (and optionally a tag) for the resulting image
+     * @param noCache do not use the daemon's build cache
+     * @param compressionLevel gzip level used to compress the context while it is uploaded,
+     *                         or {@link Deflater#NO_COMPRESSION} to send a plain tar
+     * @return the raw build output stream
+     * @throws DockerException if the upload or the build fails
+     */
+    public ClientResponse build(BuildContext context, String tag, boolean noCache, int compressionLevel) throws DockerException {
+        Preconditions.checkNotNull(context, "Context is null");
 
         //We need to use Jersey HttpClient here, since ApacheHttpClient4 will not add boundary filed to
         //Content-Type: multipart/form-data; boundary=Boundary_1_372491238_1372806136625
@@ -691,64 +1731,22 @@ public class DockerClient
         	params.add("nocache", "true");
         }
 
-        // ARCHIVE TAR
-        String archiveNameWithOutExtension = UUID.randomUUID().toString();
-
-        File dockerFolderTar = null;
-        File tmpDockerContextFolder = null;
-
-        try {
-            File dockerFile = new File(dockerFolder, "Dockerfile");
-            List<String> dockerFileContent = FileUtils.readLines(dockerFile);
-
-            if (dockerFileContent.size() <= 0) {
-                throw new DockerException(String.format("Dockerfile %s is empty", dockerFile));
-            }
-
-            //Create tmp docker context folder
-            tmpDockerContextFolder = new File(FileUtils.getTempDirectoryPath(), "docker-java-build" + archiveNameWithOutExtension);
-
-            FileUtils.copyFileToDirectory(dockerFile, tmpDockerContextFolder);
-
-            for (String cmd : dockerFileContent) {
-                if (StringUtils.startsWithIgnoreCase(cmd.trim(), "ADD ")) {
-                    String addArgs[] = StringUtils.split(cmd, " \t");
-                    if (addArgs.length != 3) {
-                        throw new DockerException(String.format("Wrong format on line [%s]", cmd));
-                    }
-
-                    File src = new File(addArgs[1]);
-                    if (!src.isAbsolute()) {
-                        src = new File(dockerFolder, addArgs[1]).getCanonicalFile();
-                    }
-
-                    if (!src.exists()) {
-                        throw new DockerException(String.format("Source file %s doesnt' exist", src));
-                    }
-                    if (src.isDirectory()) {
-                        FileUtils.copyDirectory(src, tmpDockerContextFolder);
-                    } else {
-                        FileUtils.copyFileToDirectory(src, tmpDockerContextFolder);
-                    }
-                }
-            }
-
-            dockerFolderTar = CompressArchiveUtil.archiveTARFiles(tmpDockerContextFolder, archiveNameWithOutExtension);
-
-        } catch (IOException ex) {
-            FileUtils.deleteQuietly(dockerFolderTar);
-            FileUtils.deleteQuietly(tmpDockerContextFolder);
-            throw new DockerException("Error occurred while preparing Docker context folder.", ex);
-        }
-
-        WebResource webResource = client.resource(restEndpointUrl + "/build").queryParams(params);
+        WebResource webResource = buildResource.queryParams(params);
 
+        InputStream plain = null;
         try {
             LOGGER.trace("POST: {}", webResource);
+            Object entity;
+            if (compressionLevel == Deflater.NO_COMPRESSION) {
+                plain = FileUtils.openInputStream(context.getTar());
+                entity = plain;
+            } else {
+                entity = new GzipFileStreamingOutput(context.getTar(), compressionLevel);
+            }
             return webResource
                     .type("application/tar")
                     .accept(MediaType.TEXT_PLAIN)
-                    .post(ClientResponse.class, FileUtils.openInputStream(dockerFolderTar));
+                    .post(ClientResponse.class, entity);
         } catch (UniformInterfaceException exception) {
             if (exception.getResponse().getStatus() == 500) {
                 throw new DockerException("Server error", exception);
@@ -758,10 +1756,111 @@ public class DockerClient
         } catch (IOException e) {
             throw new DockerException(e);
         } finally {
-            FileUtils.deleteQuietly(dockerFolderTar);
-            FileUtils.deleteQuietly(tmpDockerContextFolder);
+            IOUtils.closeQuietly(plain);
+        }
+
+    }
+
+    /**
+     * Build an image and read its output as typed events while the build runs. The
+     * caller must read the events to the end or close the reader.
+     *
+     * @see BuildEventReader
+     */
+    public BuildEventReader buildEvents(File dockerFolder, String tag, boolean noCache) throws DockerException {
+        return events(build(dockerFolder, tag, noCache));
+    }
+
+    /**
+     * Build an image from an assembled context and read its output as typed events.
+     *
+     * @see #buildEvents(File, String, boolean)
+     */
+    public BuildEventReader buildEvents(BuildContext context, String tag, boolean noCache) throws DockerException {
+        return events(build(context, tag, noCache, Deflater.NO_COMPRESSION));
+    }
+
+    private static BuildEventReader events(ClientResponse response) throws DockerException {
+        try {
+            return new BuildEventReader(response.getEntityInputStream());
+        } catch (IOException e) {
+            response.close();
+            throw new DockerException(e);
+        }
+    }
+
+    /**
+     * Copies a response body to a channel, optionally gzipping it on the way.
+     */
+    private static TransferStats transfer(InputStream in, WritableByteChannel target, int compressionLevel) throws IOException {
+        long start = System.nanoTime();
+        CountingInputStream counting = new CountingInputStream(in);
+        byte[] buffer = new byte[STREAMING_CHUNK_SIZE];
+        OutputStream out = new CloseShieldOutputStream(Channels.newOutputStream(target));
+        long written;
+        if (compressionLevel == Deflater.NO_COMPRESSION) {
+            written = IOUtils.copyLarge(counting, out, buffer);
+        } else {
+            ParallelGZIPOutputStream gzip = new ParallelGZIPOutputStream(out, compressionLevel);
+            try {
+                IOUtils.copyLarge(counting, gzip, buffer);
+                gzip.finish();
+            } finally {
+                // stops the compression threads; the target stays open
+                gzip.close();
+            }
+            written = gzip.getBytesOut();
         }
+        return new TransferStats(counting.getByteCount(), written, System.nanoTime() - start);
+    }
+
+    /**
+     * Reports the bytes read from the stream to a listener.
+     */
+    private static class ProgressInputStream extends CountingInputStream {
+        private final long total;
+        private final ProgressListener listener;
+
+        ProgressInputStream(InputStream in, long total, ProgressListener listener) {
+            super(in);
+            this.total = total;
+            this.listener = listener;
+        }
+
+        @Override
+        protected synchronized void afterRead(int n) {
+            super.afterRead(n);
+            if (listener != null && n > 0) {
+                listener.progress(getByteCount(), total);
+            }
+        }
+    }
+
+    /**
+     * Request entity that gzips a file on all available cores as it is written to the connection.
+     */
+    private static class GzipFileStreamingOutput implements StreamingOutput {
+        private final File file;
+        private final int level;
 
+        GzipFileStreamingOutput(File file, int level) {
+            this.file = file;
+            this.level = level;
+        }
+
+        public void write(OutputStream output) throws IOException {
+            ParallelGZIPOutputStream gzip = new ParallelGZIPOutputStream(output, level);
+            InputStream in = FileUtils.openInputStream(file);
+            try {
+                IOUtils.copyLarge(in, gzip);
+                gzip.finish();
+                LOGGER.trace("Compressed build context from {} to {} bytes", gzip.getBytesIn(), gzip.getBytesOut());
+            } finally {
+                // stops the compression pool if the upload failed; the entity stream is the client's to close
+                gzip.abort();
+                IOUtils.closeQuietly(in);
+            }
+        }
     }
 
 }
@@ -0,0 +1,52 @@
+package com.kpelykh.docker.client;
+
+/**
+ * The outcome of a request whose expected misses, such as a 404 for a container that is
+ * gone, are reported as a status instead of an exception.
+ */
+public final class DockerResult<T> {
+
+    private final int status;
+    private final T value;
+
+    DockerResult(int status, T value) {
+        this.status = status;
+        this.value = value;
+    }
+
+    /**
+     * @return the HTTP status of the response
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return whether the request returned a value
+     */
+    public boolean isPresent() {
+        return value != null;
+    }
+
+    /**
+     * @return whether the container or image didn't exist
+     */
+    public boolean isNotFound() {
+        return status == 404;
+    }
+
+    /**
+     * @return the value, or null if there is none
+     */
+    public T getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "DockerResult{" +
+                "status=" + status +
+                ", value=" + value +
+                '}';
+    }
+}
@@ -0,0 +1,269 @@
+package com.kpelykh.docker.client;
+
+import com.kpelykh.docker.client.utils.DaemonThreadFactory;
+import com.sun.jersey.api.client.ClientResponse;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies an image from one daemon to many, as a tree.
+ *
+ * In each round every daemon that already has the image streams one save to up to
+ * {@code fanout} daemons that don't, loading them all at once from the same stream. The
+ * daemons loaded in a round serve as sources in the next, so the number of rounds grows
+ * with the logarithm of the number of targets.
+ *
+ * Each target reads through a small bounded queue of chunks shared with its siblings, so
+ * memory use doesn't depend on the image size; the slowest target of a source sets its pace.
+ */
+class ImagePropagation {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImagePropagation.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int QUEUE_CHUNKS = 16;
+    private static final byte[] END = new byte[0];
+
+    private final String image;
+    private final int fanout;
+    private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("docker-java-propagate"));
+
+    ImagePropagation(String image, int fanout) {
+        this.image = image;
+        this.fanout = fanout;
+    }
+
+    /**
+     * @return the targets that could not be loaded, with the reason
+     */
+    Map<DockerClient, DockerException> run(DockerClient origin, List<DockerClient> targets) throws DockerException {
+        Map<DockerClient, DockerException> failures = new LinkedHashMap<DockerClient, DockerException>();
+        List<DockerClient> sources = new ArrayList<DockerClient>();
+        sources.add(origin);
+        LinkedList<DockerClient> remaining = new LinkedList<DockerClient>(targets);
+
+        try {
+            for (int round = 1; !remaining.isEmpty(); round++) {
+                List<List<DockerClient>> assigned = new ArrayList<List<DockerClient>>();
+                List<Future<Map<DockerClient, DockerException>>> transfers = new ArrayList<Future<Map<DockerClient, DockerException>>>();
+                for (DockerClient source : sources) {
+                    List<DockerClient> children = new ArrayList<DockerClient>();
+                    while (children.size() < fanout && !remaining.isEmpty()) {
+                        children.add(remaining.removeFirst());
+                    }
+                    if (children.isEmpty()) {
+                        break;
+                    }
+                    assigned.add(children);
+                    transfers.add(executor.submit(new Transfer(source, children)));
+                }
+                LOGGER.debug("Propagating {}: round {} from {} sources", new Object[]{image, round, transfers.size()});
+
+                for (int i = 0; i < transfers.size(); i++) {
+                    Map<DockerClient, DockerException> failed = transfers.get(i).get();
+                    failures.putAll(failed);
+                    for (DockerClient child : assigned.get(i)) {
+                        if (!failed.containsKey(child)) {
+                            sources.add(child);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DockerException("Interrupted while propagating " + image, e);
+        } catch (ExecutionException e) {
+            throw new DockerException("Propagating " + image + " failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return failures;
+    }
+
+    /**
+     * Streams one save of the image into loads on several targets.
+     */
+    private class Transfer implements Callable<Map<DockerClient, DockerException>> {
+        private final DockerClient source;
+        private final List<DockerClient> children;
+
+        Transfer(DockerClient source, List<DockerClient> children) {
+            this.source = source;
+            this.children = children;
+        }
+
+        public Map<DockerClient, DockerException> call() throws InterruptedException {
+            List<Pipe> pipes = new ArrayList<Pipe>();
+            List<Future<?>> loads = new ArrayList<Future<?>>();
+            for (final DockerClient child : children) {
+                final Pipe pipe = new Pipe();
+                pipes.add(pipe);
+                loads.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws DockerException {
+                        try {
+                            child.loadImage(pipe);
+                        } finally {
+                            pipe.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            Exception sourceError = null;
+            boolean complete = false;
+            ClientResponse save = null;
+            try {
+                save = source.saveImage(image);
+                InputStream in = save.getEntityInputStream();
+                boolean reading = true;
+                while (reading) {
+                    byte[] chunk = new byte[CHUNK_SIZE];
+                    int n = IOUtils.read(in, chunk);
+                    if (n < CHUNK_SIZE) {
+                        chunk = Arrays.copyOf(chunk, n);
+                    }
+                    reading = n > 0;
+                    if (reading) {
+                        boolean wanted = false;
+                        for (Pipe pipe : pipes) {
+                            wanted |= pipe.put(chunk);
+                        }
+                        // stop reading once every load has failed
+                        reading = wanted;
+                    }
+                }
+                complete = true;
+            } catch (DockerException e) {
+                sourceError = e;
+            } catch (IOException e) {
+                sourceError = e;
+            } catch (RuntimeException e) {
+                // e.g. ClientHandlerException when the source is unreachable
+                sourceError = e;
+            } finally {
+                if (save != null) {
+                    save.close();
+                }
+                if (!complete && sourceError == null) {
+                    sourceError = new InterruptedIOException("Interrupted while saving the image");
+                }
+                // every load must see the end of its body, or it waits forever
+                for (Pipe pipe : pipes) {
+                    pipe.end(sourceError);
+                }
+            }
+
+            Map<DockerClient, DockerException> failed = new LinkedHashMap<DockerClient, DockerException>();
+            for (int i = 0; i < children.size(); i++) {
+                try {
+                    loads.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failed.put(children.get(i), cause instanceof DockerException ? (DockerException) cause : new DockerException(cause));
+                }
+            }
+            return failed;
+        }
+    }
+
+    /**
+     * The request body of one load: a bounded queue of chunks filled by the transfer.
+     */
+    private static class Pipe extends InputStream {
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE_CHUNKS);
+        private volatile boolean abandoned = false;
+        private volatile IOException error;
+        private volatile boolean sourceEnded = false;
+        private byte[] current;
+        private int offset;
+        private boolean ended = false;
+
+        /**
+         * @return false if the load has given up and takes no more data
+         */
+        boolean put(byte[] chunk) throws InterruptedException {
+            while (!abandoned) {
+                if (queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Ends the body, failing the load if the source failed. Never blocks: if the queue
+         * is full the reader notices the end once it has drained it.
+         */
+        void end(Exception sourceError) {
+            if (sourceError != null) {
+                error = new IOException("Saving the image from the source failed", sourceError);
+            }
+            sourceEnded = true;
+            queue.offer(END);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            if (current == null || offset == current.length) {
+                try {
+                    current = null;
+                    while (current == null) {
+                        current = queue.poll(100, TimeUnit.MILLISECONDS);
+                        if (current == null && sourceEnded && queue.isEmpty()) {
+                            current = END;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                offset = 0;
+                if (current == END) {
+                    ended = true;
+                    if (error != null) {
+                        throw error;
+                    }
+                    return -1;
+                }
+            }
+            int n = Math.min(len, current.length - offset);
+            System.arraycopy(current, offset, b, off, n);
+            offset += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            abandoned = true;
+            queue.clear();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.kpelykh.docker.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * Encodes and decodes JSON entities for a {@link DockerClient}, in place of Jersey's Jackson
+ * mapping. A codec need only handle some types; the rest go through Jackson as before.
+ * Implementations must be thread-safe.
+ *
+ * @see DockerClient#setJsonCodec(JsonCodec)
+ */
+public interface JsonCodec {
+
+    /**
+     * @param type a model class, or a parameterized type such as List&lt;Container&gt;
+     */
+    boolean canDecode(Type type);
+
+    /**
+     * Reads a value of the given type. The stream is closed by the caller.
+     */
+    Object decode(Type type, InputStream in) throws IOException;
+
+    boolean canEncode(Class<?> type);
+
+    /**
+     * Writes the value. The stream is closed by the caller.
+     */
+    void encode(Object value, OutputStream out) throws IOException;
+}
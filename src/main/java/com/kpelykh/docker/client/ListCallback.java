@@ -0,0 +1,13 @@
+package com.kpelykh.docker.client;
+
+/**
+ * Receives the elements of a listing one at a time, as they are decoded.
+ */
+public interface ListCallback<T> {
+
+    /**
+     * @return true to continue with the next element, false to stop decoding the listing;
+     *         the rest of the response is still read off the connection
+     */
+    boolean onItem(T item);
+}
@@ -0,0 +1,13 @@
+package com.kpelykh.docker.client;
+
+/**
+ * Receives notifications while a large request or response body is transferred.
+ */
+public interface ProgressListener {
+
+    /**
+     * @param bytesTransferred bytes transferred so far
+     * @param totalBytes total bytes to transfer, or -1 if not known in advance
+     */
+    void progress(long bytesTransferred, long totalBytes);
+}
@@ -0,0 +1,178 @@
+package com.kpelykh.docker.client;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.DefaultHttpResponseFactory;
+import org.apache.http.impl.entity.EntityDeserializer;
+import org.apache.http.impl.entity.LaxContentLengthStrategy;
+import org.apache.http.impl.io.DefaultHttpResponseParser;
+import org.apache.http.impl.io.SocketInputBuffer;
+import org.apache.http.message.BasicLineParser;
+import org.apache.http.params.BasicHttpParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A single HTTP/1.1 POST whose body is sent from a file channel with
+ * {@link FileChannel#transferTo}, which becomes sendfile(2) on a TCP socket, so the
+ * body is never copied through user space.
+ *
+ * Neither Jersey nor HttpClient can hand a socket channel to the body writer, so the
+ * request line and headers are written by hand. The response is parsed with httpcore,
+ * as in {@link UnixSocketClientHandler}. The client's filters do not see the request;
+ * the caller reads the response as JSON whatever its content type, and logs the exchange
+ * through the wire logger itself.
+ *
+ * Connecting and waiting for each read of the response are bounded by timeouts. The read
+ * timeout is long because the daemon only answers an import once it has unpacked the
+ * whole tar. Writes are bounded only by TCP: a daemon that stops reading without closing
+ * the connection stalls the transfer.
+ */
+class SendfileRequest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SendfileRequest.class);
+
+    private static final long TRANSFER_CHUNK = 16 * 1024 * 1024;
+    private static final int RESPONSE_BUFFER_SIZE = 8 * 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 10 * 60 * 1000;
+    // how long to wait for the daemon's answer after it stopped reading the body
+    private static final int REJECTION_TIMEOUT_MILLIS = 5 * 1000;
+
+    private final URI uri;
+
+    /**
+     * @param uri an http:// URI, including the query string
+     */
+    SendfileRequest(URI uri) {
+        this.uri = uri;
+    }
+
+    static boolean isSupported(URI uri) {
+        return "http".equalsIgnoreCase(uri.getScheme());
+    }
+
+    /**
+     * Sends the request and parses the response head. The caller must close the returned
+     * response, which also closes the connection.
+     *
+     * If the daemon rejects the request before reading the whole body, sending fails; the
+     * daemon's response is then returned if it sent one, so its status and message reach
+     * the caller rather than a broken pipe.
+     *
+     * @param body channel to send from; its position is not changed
+     * @param position offset in the channel of the first byte to send
+     * @param count number of bytes to send
+     */
+    Response post(String contentType, FileChannel body, long position, long count, ProgressListener listener) throws IOException {
+        int port = uri.getPort() == -1 ? 80 : uri.getPort();
+        SocketChannel socket = SocketChannel.open();
+        boolean ok = false;
+        try {
+            socket.socket().connect(new InetSocketAddress(uri.getHost(), port), CONNECT_TIMEOUT_MILLIS);
+            socket.socket().setSoTimeout(READ_TIMEOUT_MILLIS);
+            String path = uri.getRawPath() + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+            String head = "POST " + path + " HTTP/1.1\r\n"
+                    + "Host: " + uri.getHost() + ":" + port + "\r\n"
+                    + "Content-Type: " + contentType + "\r\n"
+                    + "Content-Length: " + count + "\r\n"
+                    + "Accept: application/json\r\n"
+                    + "Connection: close\r\n"
+                    + "\r\n";
+            LOGGER.trace("POST: {} ({} bytes via sendfile)", uri, count);
+            ByteBuffer headBuffer = ByteBuffer.wrap(head.getBytes("US-ASCII"));
+            long sent = 0;
+            try {
+                while (headBuffer.hasRemaining()) {
+                    socket.write(headBuffer);
+                }
+                while (sent < count) {
+                    long n = body.transferTo(position + sent, Math.min(count - sent, TRANSFER_CHUNK), socket);
+                    if (n <= 0) {
+                        throw new IOException("Channel ended after " + sent + " of " + count + " bytes");
+                    }
+                    sent += n;
+                    if (listener != null) {
+                        listener.progress(sent, count);
+                    }
+                }
+            } catch (IOException e) {
+                Response rejection = readRejection(socket, e);
+                LOGGER.debug("{} answered {} after {} of {} bytes", new Object[]{uri, rejection.getStatus(), sent, count});
+                ok = true;
+                return rejection;
+            }
+
+            Response response = new Response(socket);
+            ok = true;
+            return response;
+        } finally {
+            if (!ok) {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * @return the response the daemon sent before it stopped reading the body
+     * @throws IOException the write failure, if there is no error response to read
+     */
+    private static Response readRejection(SocketChannel socket, IOException writeFailure) throws IOException {
+        Response response;
+        try {
+            socket.socket().setSoTimeout(REJECTION_TIMEOUT_MILLIS);
+            response = new Response(socket);
+        } catch (IOException e) {
+            throw writeFailure;
+        }
+        if (response.getStatus() < 300) {
+            response.close();
+            throw writeFailure;
+        }
+        return response;
+    }
+
+    static class Response extends FilterInputStream {
+        private final SocketChannel socket;
+        private final int status;
+
+        private Response(SocketChannel socket) throws IOException {
+            this(socket, readResponse(socket));
+        }
+
+        private Response(SocketChannel socket, HttpResponse response) throws IOException {
+            super(response.getEntity().getContent());
+            this.socket = socket;
+            this.status = response.getStatusLine().getStatusCode();
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        private static HttpResponse readResponse(SocketChannel socket) throws IOException {
+            BasicHttpParams params = new BasicHttpParams();
+            SocketInputBuffer in = new SocketInputBuffer(socket.socket(), RESPONSE_BUFFER_SIZE, params);
+            try {
+                HttpResponse response = new DefaultHttpResponseParser(in, new BasicLineParser(), new DefaultHttpResponseFactory(), params).parse();
+                response.setEntity(new EntityDeserializer(new LaxContentLengthStrategy()).deserialize(in, response));
+                return response;
+            } catch (HttpException e) {
+                throw new IOException("Invalid response from " + socket.socket().getRemoteSocketAddress(), e);
+            }
+        }
+    }
+}
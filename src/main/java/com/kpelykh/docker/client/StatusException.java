@@ -0,0 +1,24 @@
+package com.kpelykh.docker.client;
+
+/**
+ * An unexpected HTTP status from the daemon. Thrown by the methods that return a
+ * {@link DockerResult}; it carries no stack trace, so it is cheap to create.
+ */
+public class StatusException extends DockerException {
+
+    private final int status;
+
+    public StatusException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
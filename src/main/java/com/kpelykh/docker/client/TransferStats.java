@@ -0,0 +1,48 @@
+package com.kpelykh.docker.client;
+
+/**
+ * Byte counts and timing of a completed transfer.
+ */
+public class TransferStats {
+
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long elapsedNanos;
+
+    public TransferStats(long bytesRead, long bytesWritten, long elapsedNanos) {
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return bytes received from the source
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return bytes written to the target; less than {@link #getBytesRead()} if compressed on the way
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return bytes read per second over the whole transfer
+     */
+    public double getBytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytesRead * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TransferStats{bytesRead=%d, bytesWritten=%d, %.1f MB/s}",
+                bytesRead, bytesWritten, getBytesPerSecond() / (1024 * 1024));
+    }
+}
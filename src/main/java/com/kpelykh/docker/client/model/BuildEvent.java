@@ -0,0 +1,101 @@
+package com.kpelykh.docker.client.model;
+
+/**
+ * One event of a build's output, as parsed by {@link com.kpelykh.docker.client.utils.BuildEventReader}.
+ */
+public class BuildEvent {
+
+    public enum Type {
+        /** A Dockerfile instruction started. */
+        STEP,
+        /** The current step's result was found in the build cache. */
+        USING_CACHE,
+        /** The current step is running in an intermediate container, see {@link #getId()}. */
+        RUNNING,
+        /** Any other line of output, such as the output of a RUN instruction. */
+        OUTPUT,
+        /** The current step produced an image, see {@link #getId()} and {@link #getDurationMillis()}. */
+        STEP_COMPLETE,
+        /** The build finished; {@link #getId()} is the final image. */
+        SUCCESS,
+        /** The build failed; {@link #getDurationMillis()} is the time spent in the failing step. */
+        ERROR
+    }
+
+    private final Type type;
+    private final int step;
+    private final String instruction;
+    private final String id;
+    private final String message;
+    private final boolean cached;
+    private final long durationMillis;
+
+    public BuildEvent(Type type, int step, String instruction, String id, String message, boolean cached, long durationMillis) {
+        this.type = type;
+        this.step = step;
+        this.instruction = instruction;
+        this.id = id;
+        this.message = message;
+        this.cached = cached;
+        this.durationMillis = durationMillis;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return number of the step the event belongs to, or -1 before the first step
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * @return the step's Dockerfile instruction, e.g. "RUN make"
+     */
+    public String getInstruction() {
+        return instruction;
+    }
+
+    /**
+     * @return the intermediate container for {@link Type#RUNNING}, otherwise the image id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the line of output, or the error message for {@link Type#ERROR}
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return whether the step was served from the build cache
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * @return time from the start of the step to this event, for completed and failed steps
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "BuildEvent{" +
+                "type=" + type +
+                ", step=" + step +
+                ", instruction='" + instruction + '\'' +
+                ", id='" + id + '\'' +
+                ", message='" + message + '\'' +
+                ", cached=" + cached +
+                ", durationMillis=" + durationMillis +
+                '}';
+    }
+}
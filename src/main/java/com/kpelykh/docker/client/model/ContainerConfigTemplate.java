@@ -0,0 +1,136 @@
+package com.kpelykh.docker.client.model;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+import org.codehaus.jackson.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A {@link ContainerConfig} encoded once, for creating many containers that differ only
+ * in their environment and command. Everything but Env and Cmd is serialized when the
+ * template is made; each request copies those bytes and appends the two arrays.
+ *
+ * Later changes to the config do not affect the template.
+ */
+public final class ContainerConfigTemplate {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectMapper COMPACT_MAPPER = new ObjectMapper()
+            .setSerializationInclusion(JsonSerialize.Inclusion.NON_DEFAULT);
+    private static final JsonFactory JSON_FACTORY = MAPPER.getJsonFactory();
+
+    private static final byte[] ENV_FIELD = bytes("\"Env\":");
+    private static final byte[] CMD_FIELD = bytes("\"Cmd\":");
+
+    private final String image;
+    private final String[] env;
+    private final String[] cmd;
+    private final boolean compact;
+    /** The config without Env and Cmd, up to the closing brace. */
+    private final byte[] prefix;
+    private final boolean prefixHasFields;
+
+    public ContainerConfigTemplate(ContainerConfig config) {
+        this(config, false);
+    }
+
+    /**
+     * @param compact whether to leave out null and default-valued fields
+     */
+    public ContainerConfigTemplate(ContainerConfig config, boolean compact) {
+        ObjectMapper mapper = compact ? COMPACT_MAPPER : MAPPER;
+        this.compact = compact;
+        this.image = config.getImage();
+        this.env = copy(config.getEnv());
+        this.cmd = copy(config.getCmd());
+
+        ObjectNode tree = mapper.valueToTree(config);
+        tree.remove("Env");
+        tree.remove("Cmd");
+        try {
+            byte[] encoded = mapper.writeValueAsBytes(tree);
+            prefix = new byte[encoded.length - 1];
+            System.arraycopy(encoded, 0, prefix, 0, prefix.length);
+            prefixHasFields = tree.size() > 0;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not encode " + config, e);
+        }
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    /**
+     * @return the request body for the template's own Env and Cmd
+     */
+    public byte[] encode() {
+        return encode(env, cmd);
+    }
+
+    /**
+     * @param env environment for this container, or null
+     * @param cmd command for this container, or null
+     * @return the request body for a container create
+     */
+    public byte[] encode(String[] env, String[] cmd) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(prefix.length + 256);
+        try {
+            out.write(prefix);
+            boolean comma = prefixHasFields;
+            comma = writeField(out, comma, ENV_FIELD, env);
+            writeField(out, comma, CMD_FIELD, cmd);
+            out.write('}');
+        } catch (IOException e) {
+            // not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return whether a comma is needed before the next field
+     */
+    private boolean writeField(ByteArrayOutputStream out, boolean comma, byte[] name, String[] values) throws IOException {
+        if (values == null && compact) {
+            return comma;
+        }
+        if (comma) {
+            out.write(',');
+        }
+        out.write(name);
+        writeArray(out, values);
+        return true;
+    }
+
+    private static void writeArray(ByteArrayOutputStream out, String[] values) throws IOException {
+        JsonGenerator generator = JSON_FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+        if (values == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for (String value : values) {
+                generator.writeString(value);
+            }
+            generator.writeEndArray();
+        }
+        generator.flush();
+    }
+
+    private static String[] copy(String[] values) {
+        return values == null ? null : values.clone();
+    }
+
+    private static byte[] bytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
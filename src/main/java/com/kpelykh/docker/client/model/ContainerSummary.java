@@ -0,0 +1,84 @@
+package com.kpelykh.docker.client.model;
+
+import java.util.Arrays;
+
+/**
+ * A compact, read-only {@link Container}, for holding large listings: the id is packed and
+ * repeated strings such as the image name and command are shared between entries.
+ */
+public class ContainerSummary {
+
+    private final PackedId id;
+    private final String[] names;
+    private final String image;
+    private final String command;
+    private final long created;
+    private final String status;
+    private final Ports ports;
+    private final int size;
+    private final int sizeRootFs;
+
+    public ContainerSummary(PackedId id, String[] names, String image, String command, long created, String status,
+                            Ports ports, int size, int sizeRootFs) {
+        this.id = id;
+        this.names = names;
+        this.image = image;
+        this.command = command;
+        this.created = created;
+        this.status = status;
+        this.ports = ports;
+        this.size = size;
+        this.sizeRootFs = sizeRootFs;
+    }
+
+    public PackedId getId() {
+        return id;
+    }
+
+    public String[] getNames() {
+        return names;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Ports getPorts() {
+        return ports;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getSizeRootFs() {
+        return sizeRootFs;
+    }
+
+    @Override
+    public String toString() {
+        return "ContainerSummary{" +
+                "id=" + id +
+                ", names=" + Arrays.toString(names) +
+                ", image='" + image + '\'' +
+                ", command='" + command + '\'' +
+                ", created=" + created +
+                ", status='" + status + '\'' +
+                ", ports=" + ports +
+                ", size=" + size +
+                ", sizeRootFs=" + sizeRootFs +
+                '}';
+    }
+}
@@ -1,5 +1,6 @@
 package com.kpelykh.docker.client.model;
 
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.annotate.JsonProperty;
 
 import java.util.Arrays;
@@ -46,6 +47,7 @@ public class HostConfig {
         this.binds = binds;
     }
     
+    @JsonIgnore
     public void setBinds(final BoundHostVolumes volumes) {
         setBinds(volumes.asBinds());
     }
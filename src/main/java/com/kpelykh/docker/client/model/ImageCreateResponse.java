@@ -15,6 +15,12 @@ public class ImageCreateResponse {
     @JsonProperty("status")
     private String id;
 
+    public ImageCreateResponse() {
+    }
+
+    public ImageCreateResponse(String id) {
+        this.id = id;
+    }
 
     public String getId() {
         return id;
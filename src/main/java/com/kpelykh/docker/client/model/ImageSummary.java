@@ -0,0 +1,62 @@
+package com.kpelykh.docker.client.model;
+
+import java.util.Arrays;
+
+/**
+ * A compact, read-only {@link Image}, for holding large listings: ids are packed and
+ * repository tags are shared between entries.
+ */
+public class ImageSummary {
+
+    private final PackedId id;
+    private final PackedId parentId;
+    private final String[] repoTags;
+    private final long created;
+    private final long size;
+    private final long virtualSize;
+
+    public ImageSummary(PackedId id, PackedId parentId, String[] repoTags, long created, long size, long virtualSize) {
+        this.id = id;
+        this.parentId = parentId;
+        this.repoTags = repoTags;
+        this.created = created;
+        this.size = size;
+        this.virtualSize = virtualSize;
+    }
+
+    public PackedId getId() {
+        return id;
+    }
+
+    public PackedId getParentId() {
+        return parentId;
+    }
+
+    public String[] getRepoTags() {
+        return repoTags;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getVirtualSize() {
+        return virtualSize;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageSummary{" +
+                "id=" + id +
+                ", parentId=" + parentId +
+                ", repoTags=" + Arrays.toString(repoTags) +
+                ", created=" + created +
+                ", size=" + size +
+                ", virtualSize=" + virtualSize +
+                '}';
+    }
+}
@@ -0,0 +1,129 @@
+package com.kpelykh.docker.client.model;
+
+/**
+ * A container or image id packed into four longs instead of a 64 character string. Ids of
+ * up to 64 lower-case hex digits are packed; anything else is kept as given. Either way
+ * {@link #toString()} returns the id as it was.
+ */
+public final class PackedId {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long w0, w1, w2, w3;
+    private final int length;
+    /** The id when it can't be packed, otherwise null. */
+    private final String unpacked;
+
+    private PackedId(long w0, long w1, long w2, long w3, int length, String unpacked) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+        this.length = length;
+        this.unpacked = unpacked;
+    }
+
+    /**
+     * @return the packed id, or null if id is null
+     */
+    public static PackedId of(String id) {
+        if (id == null) {
+            return null;
+        }
+        return of(id.toCharArray(), 0, id.length());
+    }
+
+    /**
+     * Packs an id straight from a character buffer, such as a parser's.
+     */
+    public static PackedId of(char[] chars, int offset, int length) {
+        if (length > 64) {
+            return new PackedId(0, 0, 0, 0, length, new String(chars, offset, length));
+        }
+        long w0 = 0, w1 = 0, w2 = 0, w3 = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = digit(chars[offset + i]);
+            if (digit < 0) {
+                return new PackedId(0, 0, 0, 0, length, new String(chars, offset, length));
+            }
+            long bits = (long) digit << ((15 - (i & 15)) << 2);
+            switch (i >> 4) {
+                case 0: w0 |= bits; break;
+                case 1: w1 |= bits; break;
+                case 2: w2 |= bits; break;
+                default: w3 |= bits; break;
+            }
+        }
+        return new PackedId(w0, w1, w2, w3, length, null);
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether this id starts with the given, possibly abbreviated, id
+     */
+    public boolean startsWith(String prefix) {
+        return toString().startsWith(prefix);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PackedId)) {
+            return false;
+        }
+        PackedId other = (PackedId) o;
+        if (unpacked != null || other.unpacked != null) {
+            return unpacked != null && unpacked.equals(other.unpacked);
+        }
+        return length == other.length && w0 == other.w0 && w1 == other.w1 && w2 == other.w2 && w3 == other.w3;
+    }
+
+    @Override
+    public int hashCode() {
+        if (unpacked != null) {
+            return unpacked.hashCode();
+        }
+        // as Arrays.hashCode over the words, so ids that share a prefix still differ
+        int hash = 31 + hash(w0);
+        hash = 31 * hash + hash(w1);
+        hash = 31 * hash + hash(w2);
+        hash = 31 * hash + hash(w3);
+        return 31 * hash + length;
+    }
+
+    private static int hash(long word) {
+        return (int) (word ^ (word >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        if (unpacked != null) {
+            return unpacked;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = HEX[(int) (word(i >> 4) >>> ((15 - (i & 15)) << 2)) & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private long word(int index) {
+        switch (index) {
+            case 0: return w0;
+            case 1: return w1;
+            case 2: return w2;
+            default: return w3;
+        }
+    }
+}
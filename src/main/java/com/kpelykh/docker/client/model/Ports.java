@@ -7,11 +7,13 @@ import org.codehaus.jackson.map.JsonSerializer;
 import org.codehaus.jackson.map.SerializerProvider;
 import org.codehaus.jackson.map.annotate.JsonDeserialize;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
-import org.codehaus.jackson.node.NullNode;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -24,21 +26,56 @@ public class Ports {
 
     private final Map<String, Port> ports = new HashMap<String, Port>();
 
+    private final List<Port> bindings = new ArrayList<Port>();
+
     public Ports() { }
 
+    /**
+     * Binds a port. A binding of the same port and scheme on the same host address is
+     * replaced; one on another host address is kept, so the port is bound on both.
+     */
     public void addPort(Port port) {
-        ports.put(port.getPort(), port);
+        for (int i = 0; i < bindings.size(); i++) {
+            Port binding = bindings.get(i);
+            if (binding.getPort().equals(port.getPort())
+                    && equal(binding.getScheme(), port.getScheme())
+                    && equal(binding.getHostIp(), port.getHostIp())) {
+                bindings.set(i, port);
+                if (ports.get(port.getPort()) == binding) {
+                    ports.put(port.getPort(), port);
+                }
+                return;
+            }
+        }
+        if (!ports.containsKey(port.getPort())) {
+            ports.put(port.getPort(), port);
+        }
+        bindings.add(port);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
     }
 
     @Override
     public String toString(){
-        return ports.toString();
+        return bindings.toString();
     }
 
+    /**
+     * @return the first binding of each exposed port, by port number
+     */
     public Map<String, Port> getAllPorts(){
         return ports;
     }
 
+    /**
+     * @return every binding, in order; a port bound on several host addresses appears once for each
+     */
+    public List<Port> getBindings() {
+        return Collections.unmodifiableList(bindings);
+    }
+
     public static class Port{
 
         private final String scheme;
@@ -69,10 +106,16 @@ public class Ports {
             return hostPort;
         }
 
+        /**
+         * @param full port and scheme, e.g. "22/tcp"; the scheme defaults to tcp if missing
+         */
         public static Port makePort(String full, String hostIp, String hostPort) {
             if (full == null) return null;
-            String[] pieces = full.split("/");
-            return new Port(pieces[1], pieces[0], hostIp, hostPort);
+            int slash = full.indexOf('/');
+            if (slash < 0) {
+                return new Port("tcp", full, hostIp, hostPort);
+            }
+            return new Port(full.substring(slash + 1), full.substring(0, slash), hostIp, hostPort);
         }
 
         @Override
@@ -86,24 +129,88 @@ public class Ports {
         }
     }
 
+    /**
+     * Reads the bindings straight off the token stream, without building a tree first.
+     */
     public static class Deserializer extends JsonDeserializer<Ports> {
         @Override
         public Ports deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
 
             Ports out = new Ports();
-            ObjectCodec oc = jsonParser.getCodec();
-            JsonNode node = oc.readTree(jsonParser);
-            for (Iterator<Map.Entry<String, JsonNode>> it = node.getFields(); it.hasNext();) {
-
-                Map.Entry<String, JsonNode> field = it.next();
-                if (!field.getValue().equals(NullNode.getInstance())) {
-                    String hostIp = field.getValue().get(0).get("HostIp").getTextValue();
-                    String hostPort = field.getValue().get(0).get("HostPort").getTextValue();
-                    out.addPort(Port.makePort(field.getKey(), hostIp, hostPort));
+            if (jsonParser.getCurrentToken() == JsonToken.START_ARRAY) {
+                readList(jsonParser, out);
+                return out;
+            }
+            if (jsonParser.getCurrentToken() == JsonToken.START_OBJECT) {
+                jsonParser.nextToken();
+            }
+            for (; jsonParser.getCurrentToken() == JsonToken.FIELD_NAME; jsonParser.nextToken()) {
+                String full = jsonParser.getCurrentName();
+                JsonToken value = jsonParser.nextToken();
+                if (value != JsonToken.START_ARRAY) {
+                    // an exposed port that isn't bound is null
+                    jsonParser.skipChildren();
+                    continue;
+                }
+                for (JsonToken element = jsonParser.nextToken(); element != JsonToken.END_ARRAY && element != null; element = jsonParser.nextToken()) {
+                    if (element != JsonToken.START_OBJECT) {
+                        jsonParser.skipChildren();
+                        continue;
+                    }
+                    String hostIp = null;
+                    String hostPort = null;
+                    while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = jsonParser.getCurrentName();
+                        JsonToken token = jsonParser.nextToken();
+                        if ("HostIp".equals(name)) {
+                            hostIp = token == JsonToken.VALUE_NULL ? null : jsonParser.getText();
+                        } else if ("HostPort".equals(name)) {
+                            hostPort = token == JsonToken.VALUE_NULL ? null : jsonParser.getText();
+                        } else {
+                            jsonParser.skipChildren();
+                        }
+                    }
+                    out.addPort(Port.makePort(full, hostIp, hostPort));
                 }
             }
             return out;
         }
+
+        /**
+         * Reads the form used in container listings:
+         * [{"PrivatePort": 22, "PublicPort": 8022, "Type": "tcp", "IP": "0.0.0.0"}]
+         */
+        private static void readList(JsonParser jsonParser, Ports out) throws IOException {
+            for (JsonToken element = jsonParser.nextToken(); element != JsonToken.END_ARRAY && element != null; element = jsonParser.nextToken()) {
+                if (element != JsonToken.START_OBJECT) {
+                    jsonParser.skipChildren();
+                    continue;
+                }
+                String port = null;
+                String scheme = "tcp";
+                String hostIp = null;
+                String hostPort = null;
+                while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = jsonParser.getCurrentName();
+                    JsonToken token = jsonParser.nextToken();
+                    String text = token == JsonToken.VALUE_NULL ? null : jsonParser.getText();
+                    if ("PrivatePort".equals(name)) {
+                        port = text;
+                    } else if ("PublicPort".equals(name)) {
+                        hostPort = text;
+                    } else if ("Type".equals(name)) {
+                        scheme = text;
+                    } else if ("IP".equals(name)) {
+                        hostIp = text;
+                    } else {
+                        jsonParser.skipChildren();
+                    }
+                }
+                if (port != null) {
+                    out.addPort(new Port(scheme, port, hostIp, hostPort));
+                }
+            }
+        }
     }
 
     public static class Serializer extends JsonSerializer<Ports> {
@@ -112,15 +219,27 @@ public class Ports {
         public void serialize(Ports ports, JsonGenerator jsonGen,
                               SerializerProvider serProvider) throws IOException, JsonProcessingException {
 
+            Map<String, List<Port>> byPort = new LinkedHashMap<String, List<Port>>();
+            for (Port p : ports.bindings) {
+                String key = p.getPort() + "/" + p.getScheme();
+                List<Port> bound = byPort.get(key);
+                if (bound == null) {
+                    bound = new ArrayList<Port>();
+                    byPort.put(key, bound);
+                }
+                bound.add(p);
+            }
+
             jsonGen.writeStartObject();//{
-            for(String portKey : ports.getAllPorts().keySet()){
-                Port p = ports.getAllPorts().get(portKey);
-                jsonGen.writeFieldName(p.getPort() + "/" + p.getScheme());
+            for (Map.Entry<String, List<Port>> entry : byPort.entrySet()) {
+                jsonGen.writeFieldName(entry.getKey());
                 jsonGen.writeStartArray();
-                jsonGen.writeStartObject();
-                jsonGen.writeStringField("HostIp", p.hostIp);
-                jsonGen.writeStringField("HostPort", p.hostPort);
-                jsonGen.writeEndObject();
+                for (Port p : entry.getValue()) {
+                    jsonGen.writeStartObject();
+                    jsonGen.writeStringField("HostIp", p.hostIp);
+                    jsonGen.writeStringField("HostPort", p.hostPort);
+                    jsonGen.writeEndObject();
+                }
                 jsonGen.writeEndArray();
             }
             jsonGen.writeEndObject();//}
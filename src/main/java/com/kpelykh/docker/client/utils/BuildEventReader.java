@@ -0,0 +1,159 @@
+package com.kpelykh.docker.client.utils;
+
+import com.kpelykh.docker.client.model.BuildEvent;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.MappingIterator;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the JSON message stream of a build into {@link BuildEvent}s, reading only as
+ * far as needed for the next event so events arrive while the build runs.
+ *
+ * Step durations are measured on this side, from the arrival of a step's first line
+ * to the arrival of its resulting image id, so they include the daemon's output latency
+ * but not the upload of the build context.
+ */
+public class BuildEventReader implements Iterator<BuildEvent>, Closeable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Pattern STEP = Pattern.compile("Step (\\d+) : (.*)");
+    private static final Pattern RUNNING = Pattern.compile(" ---> Running in (\\w+)");
+    private static final Pattern IMAGE = Pattern.compile(" ---> (\\w+)");
+    private static final Pattern SUCCESS = Pattern.compile("Successfully built (\\w+)");
+    private static final String USING_CACHE = " ---> Using cache";
+
+    private final InputStream in;
+    private final MappingIterator<JsonNode> messages;
+    private final LinkedList<BuildEvent> pending = new LinkedList<BuildEvent>();
+    private final StringBuilder partialLine = new StringBuilder();
+    private final List<BuildEvent> steps = new ArrayList<BuildEvent>();
+    private int step = -1;
+    private String instruction;
+    private long stepStart;
+    private boolean cached;
+    private boolean ended = false;
+
+    /**
+     * @param in the build response body; it is closed when this reader is
+     */
+    public BuildEventReader(InputStream in) throws IOException {
+        this.in = in;
+        this.messages = MAPPER.reader(JsonNode.class).readValues(in);
+    }
+
+    public boolean hasNext() {
+        while (pending.isEmpty() && !ended) {
+            if (messages.hasNext()) {
+                parse(messages.next());
+            } else {
+                // output that didn't end with a newline
+                if (partialLine.length() > 0) {
+                    parseLine(partialLine.toString());
+                    partialLine.setLength(0);
+                }
+                ended = true;
+            }
+        }
+        return !pending.isEmpty();
+    }
+
+    public BuildEvent next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return pending.removeFirst();
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return the {@link BuildEvent.Type#STEP_COMPLETE} events read so far, with their timings
+     */
+    public List<BuildEvent> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * Reads the rest of the build.
+     *
+     * @return the id of the built image, or null if the build failed
+     */
+    public String awaitImageId() {
+        String imageId = null;
+        while (hasNext()) {
+            BuildEvent event = next();
+            if (event.getType() == BuildEvent.Type.SUCCESS) {
+                imageId = event.getId();
+            } else if (event.getType() == BuildEvent.Type.ERROR) {
+                imageId = null;
+            }
+        }
+        return imageId;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void parse(JsonNode message) {
+        if (message.has("error")) {
+            pending.add(new BuildEvent(BuildEvent.Type.ERROR, step, instruction, null,
+                    message.get("error").getTextValue(), cached, elapsedMillis()));
+            return;
+        }
+        JsonNode stream = message.get("stream");
+        if (stream == null) {
+            return;
+        }
+        partialLine.append(stream.getTextValue());
+        int newline;
+        while ((newline = partialLine.indexOf("\n")) >= 0) {
+            String line = partialLine.substring(0, newline);
+            partialLine.delete(0, newline + 1);
+            parseLine(line);
+        }
+    }
+
+    private void parseLine(String line) {
+        Matcher matcher;
+        if ((matcher = STEP.matcher(line)).matches()) {
+            step = Integer.parseInt(matcher.group(1));
+            instruction = matcher.group(2);
+            stepStart = System.nanoTime();
+            cached = false;
+            pending.add(new BuildEvent(BuildEvent.Type.STEP, step, instruction, null, line, false, 0));
+        } else if (line.equals(USING_CACHE)) {
+            cached = true;
+            pending.add(new BuildEvent(BuildEvent.Type.USING_CACHE, step, instruction, null, line, true, 0));
+        } else if ((matcher = RUNNING.matcher(line)).matches()) {
+            pending.add(new BuildEvent(BuildEvent.Type.RUNNING, step, instruction, matcher.group(1), line, cached, 0));
+        } else if ((matcher = IMAGE.matcher(line)).matches()) {
+            BuildEvent complete = new BuildEvent(BuildEvent.Type.STEP_COMPLETE, step, instruction, matcher.group(1), line, cached, elapsedMillis());
+            steps.add(complete);
+            pending.add(complete);
+        } else if ((matcher = SUCCESS.matcher(line)).matches()) {
+            pending.add(new BuildEvent(BuildEvent.Type.SUCCESS, step, instruction, matcher.group(1), line, false, 0));
+        } else {
+            pending.add(new BuildEvent(BuildEvent.Type.OUTPUT, step, instruction, null, line, cached, 0));
+        }
+    }
+
+    private long elapsedMillis() {
+        return step < 0 ? 0 : (System.nanoTime() - stepStart) / 1000000;
+    }
+}
@@ -1,59 +1,61 @@
 package com.kpelykh.docker.client.utils;
 
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.RegexFileFilter;
-import org.apache.commons.lang.StringUtils;
 
 import java.io.*;
-import java.util.Collection;
-
-import static org.apache.commons.io.filefilter.FileFilterUtils.*;
+import java.nio.channels.WritableByteChannel;
 
 public class CompressArchiveUtil {
 
 	public static File archiveTARFiles(File baseDir, String archiveNameWithOutExtension) throws IOException {
+		return archiveTARFiles(baseDir, archiveNameWithOutExtension, false);
+	}
 
-		File tarFile = null;
-		
-        tarFile = new File(FileUtils.getTempDirectoryPath(), archiveNameWithOutExtension + ".tar");
-
-        Collection<File> files =
-                FileUtils.listFiles(
-                        baseDir,
-                        new RegexFileFilter("^(.*?)"),
-                        and(directoryFileFilter(), notFileFilter(nameFileFilter(baseDir.getName()))));
-
-        byte[] buf = new byte[1024];
-        int len;
-
-        {
-            TarArchiveOutputStream tos = new TarArchiveOutputStream(new FileOutputStream(tarFile));
-            tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
-            for (File file : files) {
-                TarArchiveEntry tarEntry = new TarArchiveEntry(file);
-                tarEntry.setName(StringUtils.substringAfter(file.toString(), baseDir.getPath()));
-
-                tos.putArchiveEntry(tarEntry);
+    /**
+     * Archives the contents of baseDir to a tar file in the temp directory.
+     *
+     * @param reproducible normalize entry metadata so identical sources give byte-identical archives
+     */
+	public static File archiveTARFiles(File baseDir, String archiveNameWithOutExtension, boolean reproducible) throws IOException {
+		return archiveTARFiles(baseDir, archiveNameWithOutExtension, new ParallelContextArchiver().setReproducible(reproducible));
+	}
 
-                if (!file.isDirectory()) {
-                    FileInputStream fin = new FileInputStream(file);
-                    BufferedInputStream in = new BufferedInputStream(fin);
+    /**
+     * Archives the contents of baseDir to a tar file in the temp directory, using the given archiver.
+     */
+	public static File archiveTARFiles(File baseDir, String archiveNameWithOutExtension, ParallelContextArchiver archiver) throws IOException {
 
-                    while ((len = in.read(buf)) != -1) {
-                        tos.write(buf, 0, len);
-                    }
+		File tarFile = null;
 
-                    in.close();
-                }
-                tos.closeArchiveEntry();
+        tarFile = new File(FileUtils.getTempDirectoryPath(), archiveNameWithOutExtension + ".tar");
 
-            }
-            tos.close();
+        FileOutputStream out = new FileOutputStream(tarFile);
+        try {
+            archiver.archive(baseDir, out.getChannel());
+        } finally {
+            out.close();
         }
 
-		
 		return tarFile;
 	}
+
+    /**
+     * Writes a tar archive of the contents of baseDir to the given channel, which is left open.
+     * Entries are written in name order; see {@link ParallelContextArchiver}.
+     *
+     * @return number of bytes written
+     */
+    public static long archiveTARFiles(File baseDir, WritableByteChannel out) throws IOException {
+        return new ParallelContextArchiver().archive(baseDir, out);
+    }
+
+    /**
+     * Computes a digest of the contents of baseDir that only changes when file names or
+     * contents change, for use as a cache key for the build context.
+     *
+     * @return the digest, as "sha256:" followed by lower-case hex
+     */
+    public static String digestTARFiles(File baseDir) throws IOException {
+        return new ParallelContextArchiver().digest(baseDir);
+    }
 }
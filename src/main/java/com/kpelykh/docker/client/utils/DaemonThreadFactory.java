@@ -0,0 +1,25 @@
+package com.kpelykh.docker.client.utils;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names worker threads after their pool and marks them as daemons, so an unclosed
+ * stream or archiver never keeps the JVM alive.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+    private static final AtomicInteger POOL = new AtomicInteger();
+
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public DaemonThreadFactory(String name) {
+        this.prefix = name + "-" + POOL.incrementAndGet() + "-";
+    }
+
+    public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, prefix + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    }
+}
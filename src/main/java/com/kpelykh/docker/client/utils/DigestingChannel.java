@@ -0,0 +1,94 @@
+package com.kpelykh.docker.client.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A channel that computes the SHA-256 digest of everything written through it.
+ */
+public class DigestingChannel implements WritableByteChannel {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final WritableByteChannel out;
+    private final MessageDigest digest;
+    private long size = 0;
+    private boolean open = true;
+
+    /**
+     * @param out channel the data is passed on to; it is closed when this channel is closed
+     */
+    public DigestingChannel(WritableByteChannel out) {
+        this.out = out;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @return a channel that only computes the digest and discards the data
+     */
+    public static DigestingChannel discarding() {
+        return new DigestingChannel(null);
+    }
+
+    public int write(ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        ByteBuffer written = src.duplicate();
+        int n;
+        if (out == null) {
+            n = src.remaining();
+            src.position(src.limit());
+        } else {
+            n = out.write(src);
+        }
+        written.limit(written.position() + n);
+        digest.update(written);
+        size += n;
+        return n;
+    }
+
+    /**
+     * @return number of bytes written through this channel
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the digest of the bytes written so far, as "sha256:" followed by lower-case hex
+     */
+    public String getDigest() {
+        byte[] hash;
+        try {
+            // digest a copy so more data can still be written
+            hash = ((MessageDigest) digest.clone()).digest();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder sb = new StringBuilder("sha256:");
+        for (byte b : hash) {
+            sb.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+        }
+        return sb.toString();
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public void close() throws IOException {
+        open = false;
+        if (out != null) {
+            out.close();
+        }
+    }
+}
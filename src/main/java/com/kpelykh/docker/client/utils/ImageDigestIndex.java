@@ -0,0 +1,134 @@
+package com.kpelykh.docker.client.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A small persistent index of imported image tars, mapping the SHA-256 digest of each tar
+ * to the id of the image it produced.
+ *
+ * Tars imported from files also record the file's size and modification time with its
+ * digest, so a later import of the unchanged file can find its image without reading
+ * the file at all. Any other tar has to be hashed to be looked up.
+ *
+ * The index is a properties file that is rewritten, through a temporary file and a
+ * rename, on every change. It is safe to share between threads but not between
+ * processes.
+ */
+public class ImageDigestIndex {
+
+    private static final String DIGEST_PREFIX = "digest.";
+    private static final String FILE_PREFIX = "file.";
+
+    private final File file;
+    private final Properties entries = new Properties();
+
+    /**
+     * @param file where the index is kept; it is created on the first change if it doesn't exist
+     */
+    public ImageDigestIndex(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                entries.load(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * @return the id of the image imported from a tar with the given digest, or null
+     */
+    public synchronized String getImageId(String digest) {
+        return entries.getProperty(DIGEST_PREFIX + digest);
+    }
+
+    /**
+     * Files are looked up by absolute path; a copy of a tar at another path has to be
+     * hashed, and its digest looked up with {@link #getImageId}. An entry that can't be
+     * parsed counts as unknown and is dropped; the file is left as it is until the next change.
+     *
+     * @return the digest recorded for the file, or null if it is unknown or has changed since
+     */
+    public synchronized String getDigest(File source) {
+        String key = FILE_PREFIX + source.getAbsolutePath();
+        String value = entries.getProperty(key);
+        if (value == null) {
+            return null;
+        }
+        // size:modified:digest; the digest itself contains a colon
+        String[] fields = value.split(":", 3);
+        long length;
+        long modified;
+        try {
+            if (fields.length != 3) {
+                throw new NumberFormatException(value);
+            }
+            length = Long.parseLong(fields[0]);
+            modified = Long.parseLong(fields[1]);
+        } catch (NumberFormatException e) {
+            entries.remove(key);
+            return null;
+        }
+        if (length != source.length() || modified != source.lastModified()) {
+            return null;
+        }
+        return fields[2];
+    }
+
+    /**
+     * Records the image imported from a tar with the given digest.
+     */
+    public synchronized void put(String digest, String imageId) throws IOException {
+        entries.setProperty(DIGEST_PREFIX + digest, imageId);
+        save();
+    }
+
+    /**
+     * Records the image imported from a tar file, along with the file's digest.
+     */
+    public synchronized void put(File source, String digest, String imageId) throws IOException {
+        entries.setProperty(FILE_PREFIX + source.getAbsolutePath(),
+                source.length() + ":" + source.lastModified() + ":" + digest);
+        put(digest, imageId);
+    }
+
+    /**
+     * Forgets the image for a digest, and every file recorded with that digest, e.g.
+     * after the image was removed from the daemon.
+     */
+    public synchronized void remove(String digest) throws IOException {
+        entries.remove(DIGEST_PREFIX + digest);
+        for (Iterator<Map.Entry<Object, Object>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Object, Object> entry = it.next();
+            if (((String) entry.getKey()).startsWith(FILE_PREFIX) && ((String) entry.getValue()).endsWith(":" + digest)) {
+                it.remove();
+            }
+        }
+        save();
+    }
+
+    private void save() throws IOException {
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            entries.store(out, "docker-java image import index");
+        } finally {
+            out.close();
+        }
+        // renameTo won't replace an existing file on every platform
+        if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.kpelykh.docker.client.utils;
+
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.JsonMappingException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
+import org.codehaus.jackson.map.RuntimeJsonMappingException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the elements of a JSON array, decoding each one only when it is asked
+ * for, so only one element is in memory at a time however long the array is.
+ *
+ * Decoding errors while iterating are thrown as {@link RuntimeJsonMappingException},
+ * with the underlying error as the cause of its {@link JsonMappingException}.
+ *
+ * Closing the iterator before the end of the array stops decoding, not reading: when the
+ * stream is an HttpClient response, closing it drains the rest of the response so the
+ * connection can be reused. Stopping early saves the decoding and the memory, not the
+ * transfer.
+ */
+public class JsonArrayIterator<T> implements Iterator<T>, Closeable {
+
+    private final JsonParser parser;
+    private final ObjectReader reader;
+    private JsonToken next;
+
+    /**
+     * @param in the JSON array; it is closed when this iterator is closed
+     * @param type type of the array elements
+     */
+    public JsonArrayIterator(ObjectMapper mapper, InputStream in, Class<T> type) throws IOException {
+        this.parser = mapper.getJsonFactory().createJsonParser(in);
+        this.reader = mapper.reader(type);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new JsonParseException("Expected a JSON array", parser.getCurrentLocation());
+        }
+    }
+
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = parser.nextToken();
+            } catch (IOException e) {
+                throw wrap(e);
+            }
+        }
+        return next != null && next != JsonToken.END_ARRAY;
+    }
+
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            T value = reader.readValue(parser);
+            next = null;
+            return value;
+        } catch (IOException e) {
+            throw wrap(e);
+        }
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    private static RuntimeJsonMappingException wrap(IOException e) {
+        if (e instanceof JsonMappingException) {
+            return new RuntimeJsonMappingException((JsonMappingException) e);
+        }
+        return new RuntimeJsonMappingException(new JsonMappingException(e.getMessage(), e));
+    }
+}
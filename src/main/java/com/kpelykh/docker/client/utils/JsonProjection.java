@@ -0,0 +1,133 @@
+package com.kpelykh.docker.client.utils;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decodes only selected fields of a JSON document, given as dotted paths such as
+ * "State.Running". Every other subtree is skipped at the token level without being
+ * decoded. A projection is immutable and can be shared between threads.
+ */
+public class JsonProjection {
+
+    private final Node root = new Node(null);
+
+    /**
+     * @param paths dotted field paths; a path ending at an object or array selects all of it
+     */
+    public JsonProjection(String... paths) {
+        for (String path : paths) {
+            Node node = root;
+            for (String name : path.split("\\.")) {
+                Node child = node.children.get(name);
+                if (child == null) {
+                    child = new Node(node.path == null ? name : node.path + "." + name);
+                    node.children.put(name, child);
+                }
+                node = child;
+                if (node.whole) {
+                    break;
+                }
+            }
+            // a shorter path selects the whole subtree of a longer one
+            node.whole = true;
+            node.children.clear();
+        }
+    }
+
+    /**
+     * Reads the document from the stream, and closes it.
+     */
+    public Result read(ObjectMapper mapper, InputStream in) throws IOException {
+        JsonParser parser = mapper.getJsonFactory().createJsonParser(in);
+        try {
+            Map<String, JsonNode> values = new HashMap<String, JsonNode>();
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                readObject(parser, root, values);
+            }
+            return new Result(values);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static void readObject(JsonParser parser, Node node, Map<String, JsonNode> values) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            Node child = node.children.get(parser.getCurrentName());
+            JsonToken token = parser.nextToken();
+            if (child == null) {
+                parser.skipChildren();
+            } else if (child.whole) {
+                values.put(child.path, parser.<JsonNode>readValueAsTree());
+            } else if (token == JsonToken.START_OBJECT) {
+                readObject(parser, child, values);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static class Node {
+        final String path;
+        final Map<String, Node> children = new HashMap<String, Node>();
+        boolean whole = false;
+
+        Node(String path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * The selected fields that were present in the document, by path.
+     */
+    public static class Result {
+        private final Map<String, JsonNode> values;
+
+        Result(Map<String, JsonNode> values) {
+            this.values = values;
+        }
+
+        public boolean has(String path) {
+            return values.containsKey(path);
+        }
+
+        /**
+         * @return the value at the path, or null if it was absent
+         */
+        public JsonNode get(String path) {
+            return values.get(path);
+        }
+
+        public String getText(String path) {
+            JsonNode value = values.get(path);
+            return value == null || value.isNull() ? null : value.asText();
+        }
+
+        public boolean getBoolean(String path, boolean defaultValue) {
+            JsonNode value = values.get(path);
+            return value == null ? defaultValue : value.asBoolean(defaultValue);
+        }
+
+        public int getInt(String path, int defaultValue) {
+            JsonNode value = values.get(path);
+            return value == null ? defaultValue : value.asInt(defaultValue);
+        }
+
+        public Map<String, JsonNode> getValues() {
+            return Collections.unmodifiableMap(values);
+        }
+
+        @Override
+        public String toString() {
+            return values.toString();
+        }
+    }
+}
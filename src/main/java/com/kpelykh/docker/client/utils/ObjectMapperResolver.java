@@ -0,0 +1,41 @@
+package com.kpelykh.docker.client.utils;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Supplies the ObjectMapper that Jersey uses for request and response entities.
+ *
+ * In compact mode, request fields that are null or still hold the value they have in a
+ * newly constructed model are left out. The daemon decodes a missing field as its zero
+ * value, which is what every model default is, so the request means the same thing.
+ */
+@Provider
+public class ObjectMapperResolver implements ContextResolver<ObjectMapper> {
+
+    private final ObjectMapper standard = new ObjectMapper();
+    private final ObjectMapper compact = newCompactMapper();
+    private volatile boolean compactRequests = false;
+
+    public ObjectMapper getContext(Class<?> type) {
+        return compactRequests ? compact : standard;
+    }
+
+    public void setCompactRequests(boolean compactRequests) {
+        this.compactRequests = compactRequests;
+    }
+
+    public boolean isCompactRequests() {
+        return compactRequests;
+    }
+
+    /**
+     * @return a mapper that leaves out null and default-valued fields
+     */
+    public static ObjectMapper newCompactMapper() {
+        return new ObjectMapper().setSerializationInclusion(JsonSerialize.Inclusion.NON_DEFAULT);
+    }
+}
@@ -0,0 +1,449 @@
+package com.kpelykh.docker.client.utils;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Archives a build context directory using a pool of worker threads.
+ *
+ * Directories are listed and files are stat'ed in parallel, then the entries are sorted
+ * by name so the archive layout doesn't depend on the order in which the filesystem
+ * or the workers return them. While the archive is written, workers read ahead the
+ * contents of small files up to a bounded number of bytes; larger files are copied
+ * straight from disk by {@link TarChannelWriter}.
+ *
+ * In reproducible mode the per-file metadata that doesn't come from the content
+ * (modification time, owner) is normalized as well, so identical sources always
+ * produce byte-identical archives and the same {@link #digest(File)}.
+ *
+ * With deduplication on, files whose content is identical to an earlier entry are
+ * written as hard links to that entry instead of being stored again. Only files that
+ * share their size with another file are hashed. Note that the daemon then extracts
+ * them as hard links, so a later in-place change to one copy shows in all of them.
+ *
+ * With sparse detection on, large files are scanned for holes on the worker threads
+ * and the ones that are mostly holes are written as sparse entries, see {@link SparseMap}.
+ */
+public class ParallelContextArchiver {
+
+    public static final int DEFAULT_PREFETCH_FILE_SIZE = 1024 * 1024;
+    public static final long DEFAULT_PREFETCH_BYTES = 64L * 1024 * 1024;
+
+    /** Modification time given to every entry of a reproducible archive. */
+    public static final long REPRODUCIBLE_MOD_TIME = 0L;
+
+    private final int threads;
+    private int prefetchFileSize = DEFAULT_PREFETCH_FILE_SIZE;
+    private long prefetchBytes = DEFAULT_PREFETCH_BYTES;
+    private boolean reproducible = false;
+    private boolean deduplicate = false;
+    private boolean sparse = false;
+    private long deduplicatedBytes = 0;
+
+    public ParallelContextArchiver() {
+        // scanning and reading small files is mostly waiting on the disk
+        this(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    public ParallelContextArchiver(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @param prefetchFileSize files up to this size are read ahead on worker threads
+     */
+    public ParallelContextArchiver setPrefetchFileSize(int prefetchFileSize) {
+        this.prefetchFileSize = prefetchFileSize;
+        return this;
+    }
+
+    /**
+     * @param prefetchBytes upper bound on the bytes of file content held in memory ahead of the writer
+     */
+    public ParallelContextArchiver setPrefetchBytes(long prefetchBytes) {
+        this.prefetchBytes = prefetchBytes;
+        return this;
+    }
+
+    /**
+     * @param reproducible normalize entry metadata so that the archive depends only on file names and contents
+     */
+    public ParallelContextArchiver setReproducible(boolean reproducible) {
+        this.reproducible = reproducible;
+        return this;
+    }
+
+    /**
+     * @param deduplicate store files with identical contents once and link later copies to the first
+     */
+    public ParallelContextArchiver setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+        return this;
+    }
+
+    /**
+     * @param sparse send files that are mostly holes as sparse entries holding only their data
+     */
+    public ParallelContextArchiver setSparse(boolean sparse) {
+        this.sparse = sparse;
+        return this;
+    }
+
+    /**
+     * @return bytes of file content that the last archive didn't store because of deduplication
+     */
+    public long getDeduplicatedBytes() {
+        return deduplicatedBytes;
+    }
+
+    /**
+     * Writes a tar archive of the files under baseDir to the given channel, which is left open.
+     *
+     * @return number of bytes written
+     */
+    public long archive(File baseDir, WritableByteChannel out) throws IOException {
+        return archive(baseDir, out, reproducible);
+    }
+
+    /**
+     * Computes the digest of the reproducible archive of baseDir without keeping the archive.
+     * Two directories with the same file names and contents have the same digest, which
+     * makes it a cache key for the context.
+     *
+     * @return the digest, as "sha256:" followed by lower-case hex
+     */
+    public String digest(File baseDir) throws IOException {
+        DigestingChannel channel = DigestingChannel.discarding();
+        archive(baseDir, channel, true);
+        return channel.getDigest();
+    }
+
+    private long archive(File baseDir, WritableByteChannel out, boolean reproducible) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("docker-java-context"));
+        try {
+            List<ContextFile> files = new Scanner(baseDir, executor, reproducible).scan();
+            Collections.sort(files);
+            deduplicatedBytes = deduplicate ? deduplicate(files, executor) : 0;
+            return write(files, out, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Turns every file whose content matches an earlier file's into a hard link to it.
+     *
+     * @return the bytes of content saved
+     */
+    private long deduplicate(List<ContextFile> files, ExecutorService executor) throws IOException {
+        Map<Long, List<ContextFile>> bySize = new HashMap<Long, List<ContextFile>>();
+        for (ContextFile file : files) {
+            if (file.getSize() > 0) {
+                List<ContextFile> sameSize = bySize.get(file.getSize());
+                if (sameSize == null) {
+                    sameSize = new ArrayList<ContextFile>(1);
+                    bySize.put(file.getSize(), sameSize);
+                }
+                sameSize.add(file);
+            }
+        }
+
+        // only files that share their size with another one can be duplicates
+        Map<ContextFile, Future<String>> hashes = new HashMap<ContextFile, Future<String>>();
+        for (List<ContextFile> sameSize : bySize.values()) {
+            if (sameSize.size() > 1) {
+                for (ContextFile file : sameSize) {
+                    hashes.put(file, executor.submit(new HashFile(file)));
+                }
+            }
+        }
+
+        long saved = 0;
+        Map<String, String> firstByHash = new HashMap<String, String>();
+        for (ContextFile file : files) {
+            Future<String> hash = hashes.get(file);
+            if (hash == null) {
+                continue;
+            }
+            String first = firstByHash.get(get(hash));
+            if (first == null) {
+                firstByHash.put(get(hash), file.entry.getName());
+            } else {
+                saved += file.getSize();
+                file.linkTo(first);
+            }
+        }
+        return saved;
+    }
+
+    private long write(List<ContextFile> files, WritableByteChannel out, ExecutorService executor) throws IOException {
+        TarChannelWriter tar = new TarChannelWriter(out);
+        List<Future<ByteBuffer>> reads = new ArrayList<Future<ByteBuffer>>(Collections.<Future<ByteBuffer>>nCopies(files.size(), null));
+        List<Future<SparseMap>> maps = new ArrayList<Future<SparseMap>>(Collections.<Future<SparseMap>>nCopies(files.size(), null));
+
+        int next = 0;
+        long inFlight = 0;
+        for (int i = 0; i < files.size(); i++) {
+            // keep the read-ahead window full
+            while (next < files.size() && (next <= i || inFlight < prefetchBytes)) {
+                ContextFile candidate = files.get(next);
+                if (candidate.isLink()) {
+                    // nothing to read
+                } else if (sparse && candidate.getSize() >= SparseMap.MIN_FILE_SIZE) {
+                    maps.set(next, executor.submit(new MapFile(candidate)));
+                } else if (candidate.getSize() <= prefetchFileSize) {
+                    reads.set(next, executor.submit(new ReadFile(candidate)));
+                    inFlight += candidate.getSize();
+                }
+                next++;
+            }
+
+            ContextFile file = files.get(i);
+            Future<ByteBuffer> read = reads.set(i, null);
+            Future<SparseMap> map = maps.set(i, null);
+            if (file.isLink()) {
+                tar.putEntry(file.entry);
+            } else if (read != null) {
+                tar.putFile(file.entry, get(read));
+                inFlight -= file.getSize();
+            } else if (map != null && get(map) != null) {
+                putSparseFile(tar, file, get(map));
+            } else {
+                tar.putFile(file.entry, file.file);
+            }
+        }
+        tar.finish();
+
+        return tar.getBytesWritten();
+    }
+
+    private static void putSparseFile(TarChannelWriter tar, ContextFile file, SparseMap map) throws IOException {
+        FileInputStream in = new FileInputStream(file.file);
+        try {
+            tar.putSparseFile(file.entry, in.getChannel(), map);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while archiving");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Archiving failed", e.getCause());
+        }
+    }
+
+    private static class ContextFile implements Comparable<ContextFile> {
+        private final File file;
+        private final long size;
+        private TarArchiveEntry entry;
+
+        ContextFile(TarArchiveEntry entry, File file) {
+            this.entry = entry;
+            this.file = file;
+            this.size = entry.getSize();
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        boolean isLink() {
+            return entry.isLink();
+        }
+
+        void linkTo(String target) {
+            TarArchiveEntry link = new TarArchiveEntry(entry.getName(), TarConstants.LF_LINK);
+            link.setLinkName(target);
+            link.setModTime(entry.getModTime());
+            link.setMode(entry.getMode());
+            link.setIds(entry.getUserId(), entry.getGroupId());
+            link.setNames(entry.getUserName(), entry.getGroupName());
+            entry = link;
+        }
+
+        public int compareTo(ContextFile other) {
+            return entry.getName().compareTo(other.entry.getName());
+        }
+    }
+
+    private static class ReadFile implements Callable<ByteBuffer> {
+        private final ContextFile file;
+
+        ReadFile(ContextFile file) {
+            this.file = file;
+        }
+
+        public ByteBuffer call() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate((int) file.getSize());
+            FileInputStream in = new FileInputStream(file.file);
+            try {
+                FileChannel channel = in.getChannel();
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // keep reading
+                }
+            } finally {
+                in.close();
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    private static class MapFile implements Callable<SparseMap> {
+        private final ContextFile file;
+
+        MapFile(ContextFile file) {
+            this.file = file;
+        }
+
+        public SparseMap call() throws IOException {
+            FileInputStream in = new FileInputStream(file.file);
+            try {
+                return SparseMap.scan(in.getChannel(), file.getSize());
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static class HashFile implements Callable<String> {
+        private final ContextFile file;
+
+        HashFile(ContextFile file) {
+            this.file = file;
+        }
+
+        public String call() throws IOException {
+            DigestingChannel digest = DigestingChannel.discarding();
+            FileInputStream in = new FileInputStream(file.file);
+            try {
+                FileChannel channel = in.getChannel();
+                long position = 0;
+                while (position < file.getSize()) {
+                    long n = channel.transferTo(position, file.getSize() - position, digest);
+                    if (n <= 0) {
+                        throw new IOException("File shrank while being archived");
+                    }
+                    position += n;
+                }
+            } finally {
+                in.close();
+            }
+            return digest.getDigest();
+        }
+    }
+
+    /**
+     * Walks the tree with one task per directory. Like the FileUtils.listFiles call this
+     * replaces, only regular files become entries and subdirectories that share the base
+     * directory's name are not descended into.
+     */
+    private static class Scanner {
+        private final File baseDir;
+        private final ExecutorService executor;
+        private final boolean reproducible;
+        private final Queue<ContextFile> files = new ConcurrentLinkedQueue<ContextFile>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile IOException failure;
+
+        Scanner(File baseDir, ExecutorService executor, boolean reproducible) {
+            this.baseDir = baseDir;
+            this.executor = executor;
+            this.reproducible = reproducible;
+        }
+
+        List<ContextFile> scan() throws IOException {
+            submit(baseDir);
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while scanning " + baseDir);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return new ArrayList<ContextFile>(files);
+        }
+
+        private void submit(final File dir) {
+            pending.incrementAndGet();
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        if (failure == null) {
+                            scanDirectory(dir);
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    } catch (RuntimeException e) {
+                        failure = new IOException("Error scanning " + dir, e);
+                    } finally {
+                        if (pending.decrementAndGet() == 0) {
+                            done.countDown();
+                        }
+                    }
+                }
+            });
+        }
+
+        private void scanDirectory(File dir) throws IOException {
+            File[] children = dir.listFiles();
+            if (children == null) {
+                throw new IOException("Unable to list directory " + dir);
+            }
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    if (!child.getName().equals(baseDir.getName())) {
+                        submit(child);
+                    }
+                } else {
+                    TarArchiveEntry entry = new TarArchiveEntry(child);
+                    entry.setName(StringUtils.substringAfter(child.toString(), baseDir.getPath()));
+                    if (reproducible) {
+                        entry.setModTime(REPRODUCIBLE_MOD_TIME);
+                        entry.setMode(TarArchiveEntry.DEFAULT_FILE_MODE);
+                        entry.setIds(0, 0);
+                        entry.setNames("", "");
+                    }
+                    files.add(new ContextFile(entry, child));
+                }
+            }
+        }
+    }
+}
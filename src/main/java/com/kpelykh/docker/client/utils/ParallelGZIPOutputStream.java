@@ -0,0 +1,239 @@
+package com.kpelykh.docker.client.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip output stream that compresses fixed-size blocks of input on several threads
+ * at once, in the manner of pigz.
+ *
+ * Each block is written as a complete gzip member, so the output is a multi-member
+ * gzip stream (RFC 1952, section 2.2). Docker's decompressor, GNU gzip and
+ * {@link java.util.zip.GZIPInputStream} all read such streams as one continuous file.
+ * Blocks are compressed independently, so the ratio is slightly worse than a
+ * single-threaded gzip of the same data; the default block size keeps the loss small.
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private static final byte[] GZIP_HEADER = {
+            (byte) 0x1f, (byte) 0x8b,   // magic
+            Deflater.DEFLATED,          // compression method
+            0,                          // flags
+            0, 0, 0, 0,                 // mtime
+            0,                          // extra flags
+            (byte) 0xff                 // OS: unknown
+    };
+
+    private final OutputStream out;
+    private final int level;
+    private final int blockSize;
+    private final int maxPending;
+    private final ExecutorService executor;
+    private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+    private byte[] block;
+    private int blockLength = 0;
+    private boolean written = false;
+    private boolean finished = false;
+    private long bytesIn = 0;
+    private long bytesOut = 0;
+
+    public ParallelGZIPOutputStream(OutputStream out, int level) {
+        this(out, level, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelGZIPOutputStream(OutputStream out, int level, int threads) {
+        this(out, level, threads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out the stream the compressed data is written to
+     * @param level deflate level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     * @param threads number of compressing threads
+     * @param blockSize bytes of input per gzip member
+     */
+    public ParallelGZIPOutputStream(OutputStream out, int level, int threads, int blockSize) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.out = out;
+        this.level = level;
+        this.blockSize = blockSize;
+        // allow two blocks in flight per thread, so workers never wait on the writer
+        this.maxPending = 2 * threads;
+        this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("docker-java-gzip"));
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Stream already finished");
+        }
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Compresses and writes everything buffered so far, then writes out all pending
+     * blocks. Unlike {@link #close()}, the underlying stream is left open.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (blockLength > 0 || !written) {
+            // an empty input still needs one member to be a valid gzip file
+            submitBlock();
+        }
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+        finished = true;
+        executor.shutdown();
+    }
+
+    /**
+     * Stops the compressing threads and discards whatever has not been written, leaving
+     * the underlying stream open. Call it when writing or {@link #finish()} fails and the
+     * stream is not going to be closed; it has no effect once the stream is finished.
+     */
+    public void abort() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        for (Future<byte[]> member : pending) {
+            member.cancel(true);
+        }
+        pending.clear();
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    /**
+     * @return whether all compressing threads have stopped, which follows shortly after the
+     *         stream is finished, closed or aborted
+     */
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    /**
+     * @return number of uncompressed bytes written to this stream
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return number of compressed bytes written to the underlying stream
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    private void submitBlock() throws IOException {
+        final byte[] data = block;
+        final int length = blockLength;
+        pending.addLast(executor.submit(new Callable<byte[]>() {
+            public byte[] call() {
+                return compress(data, length, level);
+            }
+        }));
+        bytesIn += length;
+        written = true;
+        block = new byte[blockSize];
+        blockLength = 0;
+        while (pending.size() >= maxPending) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        byte[] member;
+        try {
+            member = pending.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+        out.write(member);
+        bytesOut += member.length;
+    }
+
+    private static byte[] compress(byte[] data, int length, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + 64);
+        member.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            byte[] buf = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                member.write(buf, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        writeIntLE(member, crc.getValue());
+        writeIntLE(member, length);
+        return member.toByteArray();
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, long value) {
+        out.write((int) (value & 0xff));
+        out.write((int) ((value >> 8) & 0xff));
+        out.write((int) ((value >> 16) & 0xff));
+        out.write((int) ((value >> 24) & 0xff));
+    }
+}
@@ -0,0 +1,39 @@
+package com.kpelykh.docker.client.utils;
+
+/**
+ * A request path with one %s placeholder, split once so that expanding it is a single
+ * sized StringBuilder instead of a String.format call, which parses the format string
+ * every time. Like String.format, a null value expands to "null".
+ */
+public final class PathTemplate {
+
+    private final String prefix;
+    private final String suffix;
+
+    /**
+     * @param template a path such as "/containers/%s/json"
+     */
+    public PathTemplate(String template) {
+        int placeholder = template.indexOf("%s");
+        if (placeholder < 0 || template.indexOf("%s", placeholder + 2) >= 0) {
+            throw new IllegalArgumentException("Expected exactly one %s in " + template);
+        }
+        this.prefix = template.substring(0, placeholder);
+        this.suffix = template.substring(placeholder + 2);
+    }
+
+    /**
+     * @param base the endpoint URL to prepend
+     * @param value the value for the placeholder
+     */
+    public String expand(String base, String value) {
+        String v = String.valueOf(value);
+        return new StringBuilder(base.length() + prefix.length() + v.length() + suffix.length())
+                .append(base).append(prefix).append(v).append(suffix).toString();
+    }
+
+    @Override
+    public String toString() {
+        return prefix + "%s" + suffix;
+    }
+}
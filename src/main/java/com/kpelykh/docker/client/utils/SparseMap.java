@@ -0,0 +1,148 @@
+package com.kpelykh.docker.client.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The data regions of a file that is mostly holes (or zeros), in the form stored in a
+ * PAX format 1.0 sparse tar entry.
+ *
+ * Java has no portable way to ask the filesystem where the holes are, so the file is
+ * read once and every aligned block of zeros is treated as a hole. Reading a hole costs
+ * no disk I/O, so this runs at memory speed on genuinely sparse files.
+ */
+public class SparseMap {
+
+    /** Granularity of hole detection; matches the usual filesystem block size. */
+    public static final int BLOCK = 4096;
+
+    /** Files smaller than this are never treated as sparse. */
+    public static final long MIN_FILE_SIZE = 1024 * 1024;
+
+    /** Beyond this many data regions the map costs more than it saves. */
+    private static final int MAX_REGIONS = 65536;
+
+    private static final int SCAN_BUFFER_SIZE = 256 * 1024;
+
+    private final long realSize;
+    private final List<long[]> regions;
+    private final byte[] header;
+    private final long dataSize;
+
+    private SparseMap(long realSize, List<long[]> regions) {
+        this.realSize = realSize;
+        this.regions = regions;
+
+        // PAX 1.0 map: region count, then offset and length of each region, one number per line
+        StringBuilder sb = new StringBuilder();
+        sb.append(regions.size()).append('\n');
+        long data = 0;
+        for (long[] region : regions) {
+            sb.append(region[0]).append('\n').append(region[1]).append('\n');
+            data += region[1];
+        }
+        int padded = (sb.length() + TarChannelWriter.RECORD_SIZE - 1) / TarChannelWriter.RECORD_SIZE * TarChannelWriter.RECORD_SIZE;
+        this.header = new byte[padded];
+        for (int i = 0; i < sb.length(); i++) {
+            header[i] = (byte) sb.charAt(i);
+        }
+        this.dataSize = data;
+    }
+
+    /**
+     * Scans the first {@code size} bytes of the channel for holes.
+     *
+     * @return the map, or null if the file is too small or has too few holes to be worth sending sparse
+     */
+    public static SparseMap scan(FileChannel channel, long size) throws IOException {
+        if (size < MIN_FILE_SIZE) {
+            return null;
+        }
+        List<long[]> regions = new ArrayList<long[]>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE);
+        long position = 0;
+        long regionStart = -1;
+        while (position < size) {
+            buffer.clear();
+            if (size - position < buffer.capacity()) {
+                buffer.limit((int) (size - position));
+            }
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                throw new IOException("File shrank while being archived");
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                int length = Math.min(BLOCK, buffer.remaining());
+                boolean zero = isZero(buffer, length);
+                if (!zero && regionStart < 0) {
+                    regionStart = position;
+                } else if (zero && regionStart >= 0) {
+                    regions.add(new long[]{regionStart, position - regionStart});
+                    regionStart = -1;
+                    if (regions.size() > MAX_REGIONS) {
+                        return null;
+                    }
+                }
+                position += length;
+            }
+        }
+        if (regionStart >= 0) {
+            regions.add(new long[]{regionStart, size - regionStart});
+        }
+        if (regions.isEmpty() || regions.get(regions.size() - 1)[0] + regions.get(regions.size() - 1)[1] < size) {
+            // the map must reach the end of the file, so a trailing hole gets an empty region
+            regions.add(new long[]{size, 0});
+        }
+
+        SparseMap map = new SparseMap(size, regions);
+        return map.getStoredSize() + BLOCK <= size ? map : null;
+    }
+
+    /**
+     * Checks the next length bytes of the buffer and moves past them.
+     */
+    private static boolean isZero(ByteBuffer buffer, int length) {
+        int end = buffer.position() + length;
+        boolean zero = true;
+        while (zero && buffer.position() + 8 <= end) {
+            zero = buffer.getLong() == 0;
+        }
+        while (zero && buffer.position() < end) {
+            zero = buffer.get() == 0;
+        }
+        buffer.position(end);
+        return zero;
+    }
+
+    /**
+     * @return the logical size of the file, holes included
+     */
+    public long getRealSize() {
+        return realSize;
+    }
+
+    /**
+     * @return data regions as {offset, length} pairs, in file order
+     */
+    public List<long[]> getRegions() {
+        return regions;
+    }
+
+    /**
+     * @return bytes of the tar entry body: the map header followed by the data regions
+     */
+    public long getStoredSize() {
+        return header.length + dataSize;
+    }
+
+    /**
+     * @return the map in the PAX 1.0 text form that precedes the data, padded to a tar record
+     */
+    public byte[] getHeader() {
+        return header;
+    }
+}
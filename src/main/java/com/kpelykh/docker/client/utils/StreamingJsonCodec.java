@@ -0,0 +1,259 @@
+package com.kpelykh.docker.client.utils;
+
+import com.kpelykh.docker.client.JsonCodec;
+import com.kpelykh.docker.client.model.Container;
+import com.kpelykh.docker.client.model.ContainerConfig;
+import com.kpelykh.docker.client.model.Image;
+import com.kpelykh.docker.client.model.Ports;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written streaming codecs for the hottest entities: container and image listings
+ * are decoded straight from parser tokens, and container configs are written straight to
+ * a generator, with no bean introspection or intermediate objects. Unknown fields are
+ * skipped.
+ *
+ * Other types, including ContainerInspectResponse, are left to Jackson; for inspecting
+ * only a few fields of a container see {@link JsonProjection}.
+ */
+public class StreamingJsonCodec implements JsonCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String[] NO_STRINGS = new String[0];
+
+    private final JsonFactory factory = MAPPER.getJsonFactory();
+    private final Ports.Deserializer portsDeserializer = new Ports.Deserializer();
+    private final boolean compact;
+
+    public StreamingJsonCodec() {
+        this(false);
+    }
+
+    /**
+     * @param compact whether to leave default-valued fields out of encoded configs
+     */
+    public StreamingJsonCodec(boolean compact) {
+        this.compact = compact;
+    }
+
+    public boolean canDecode(Type type) {
+        return type == Container.class || type == Image.class
+                || isListOf(type, Container.class) || isListOf(type, Image.class);
+    }
+
+    public Object decode(Type type, InputStream in) throws IOException {
+        JsonParser parser = factory.createJsonParser(in);
+        try {
+            JsonToken token = parser.nextToken();
+            if (type == Container.class) {
+                return readContainer(parser);
+            } else if (type == Image.class) {
+                return readImage(parser);
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new JsonParseException("Expected a JSON array", parser.getCurrentLocation());
+            }
+            boolean containers = isListOf(type, Container.class);
+            List<Object> values = new ArrayList<Object>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                values.add(containers ? readContainer(parser) : readImage(parser));
+            }
+            return values;
+        } finally {
+            parser.close();
+        }
+    }
+
+    public boolean canEncode(Class<?> type) {
+        return type == ContainerConfig.class;
+    }
+
+    public void encode(Object value, OutputStream out) throws IOException {
+        JsonGenerator generator = factory.createJsonGenerator(out, JsonEncoding.UTF8);
+        writeConfig(generator, (ContainerConfig) value);
+        generator.flush();
+    }
+
+    private static boolean isListOf(Type type, Class<?> element) {
+        if (!(type instanceof ParameterizedType)) {
+            return false;
+        }
+        ParameterizedType parameterized = (ParameterizedType) type;
+        return parameterized.getRawType() == List.class && parameterized.getActualTypeArguments()[0] == element;
+    }
+
+    private Container readContainer(JsonParser parser) throws IOException {
+        Container container = new Container();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("Id".equals(name)) {
+                container.setId(parser.getText());
+            } else if ("Command".equals(name)) {
+                container.setCommand(parser.getText());
+            } else if ("Image".equals(name)) {
+                container.setImage(parser.getText());
+            } else if ("Created".equals(name)) {
+                container.setCreated(parser.getLongValue());
+            } else if ("Status".equals(name)) {
+                container.setStatus(parser.getText());
+            } else if ("Ports".equals(name)) {
+                container.setPorts(portsDeserializer.deserialize(parser, null));
+            } else if ("SizeRw".equals(name)) {
+                container.setSize(parser.getIntValue());
+            } else if ("SizeRootFs".equals(name)) {
+                container.setSizeRootFs(parser.getIntValue());
+            } else if ("Names".equals(name)) {
+                container.setNames(readStrings(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return container;
+    }
+
+    private Image readImage(JsonParser parser) throws IOException {
+        Image image = new Image();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("Id".equals(name)) {
+                image.setId(parser.getText());
+            } else if ("RepoTags".equals(name)) {
+                image.setRepoTags(readStrings(parser));
+            } else if ("Repository".equals(name)) {
+                image.setRepository(parser.getText());
+            } else if ("Tag".equals(name)) {
+                image.setTag(parser.getText());
+            } else if ("ParentId".equals(name)) {
+                image.setParentId(parser.getText());
+            } else if ("Created".equals(name)) {
+                image.setCreated(parser.getLongValue());
+            } else if ("Size".equals(name)) {
+                image.setSize(parser.getLongValue());
+            } else if ("VirtualSize".equals(name)) {
+                image.setVirtualSize(parser.getLongValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return image;
+    }
+
+    private static String[] readStrings(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException("Expected a JSON array", parser.getCurrentLocation());
+        }
+        List<String> values = new ArrayList<String>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            values.add(token == JsonToken.VALUE_NULL ? null : parser.getText());
+        }
+        return values.toArray(NO_STRINGS);
+    }
+
+    /**
+     * Writes the fields in the order Jackson does, so bodies are byte-for-byte the same.
+     */
+    private void writeConfig(JsonGenerator out, ContainerConfig config) throws IOException {
+        out.writeStartObject();
+        writeString(out, "Hostname", config.getHostName(), "");
+        writeStrings(out, "PortSpecs", config.getPortSpecs());
+        writeString(out, "User", config.getUser(), "");
+        writeBoolean(out, "Tty", config.isTty());
+        writeBoolean(out, "OpenStdin", config.isStdinOpen());
+        writeBoolean(out, "StdinOnce", config.isStdInOnce());
+        writeNumber(out, "Memory", config.getMemoryLimit());
+        writeNumber(out, "MemorySwap", config.getMemorySwap());
+        writeNumber(out, "CpuShares", config.getCpuShares());
+        writeBoolean(out, "AttachStdin", config.isAttachStdin());
+        writeBoolean(out, "AttachStdout", config.isAttachStdout());
+        writeBoolean(out, "AttachStderr", config.isAttachStderr());
+        writeStrings(out, "Env", config.getEnv());
+        writeStrings(out, "Cmd", config.getCmd());
+        writeStrings(out, "Dns", config.getDns());
+        writeString(out, "Image", config.getImage(), null);
+        writeObject(out, "Volumes", config.getVolumes());
+        writeString(out, "VolumesFrom", config.getVolumesFrom(), "");
+        String[] entrypoint = config.getEntrypoint();
+        if (!compact || (entrypoint != null && entrypoint.length > 0)) {
+            writeStrings(out, "Entrypoint", entrypoint);
+        }
+        writeBoolean(out, "NetworkDisabled", config.isNetworkDisabled());
+        writeBoolean(out, "Privileged", config.isPrivileged());
+        writeString(out, "WorkingDir", config.getWorkingDir(), "");
+        writeString(out, "Domainname", config.getDomainName(), "");
+        writeObject(out, "ExposedPorts", config.getExposedPorts());
+        writeStrings(out, "OnBuild", config.getOnBuild());
+        out.writeEndObject();
+    }
+
+    private void writeString(JsonGenerator out, String name, String value, String defaultValue) throws IOException {
+        if (compact && (value == null || value.equals(defaultValue))) {
+            return;
+        }
+        out.writeFieldName(name);
+        if (value == null) {
+            out.writeNull();
+        } else {
+            out.writeString(value);
+        }
+    }
+
+    private void writeStrings(JsonGenerator out, String name, String[] values) throws IOException {
+        if (compact && values == null) {
+            return;
+        }
+        out.writeFieldName(name);
+        if (values == null) {
+            out.writeNull();
+            return;
+        }
+        out.writeStartArray();
+        for (String value : values) {
+            out.writeString(value);
+        }
+        out.writeEndArray();
+    }
+
+    private void writeBoolean(JsonGenerator out, String name, boolean value) throws IOException {
+        if (!compact || value) {
+            out.writeBooleanField(name, value);
+        }
+    }
+
+    private void writeNumber(JsonGenerator out, String name, long value) throws IOException {
+        if (!compact || value != 0) {
+            out.writeNumberField(name, value);
+        }
+    }
+
+    private void writeObject(JsonGenerator out, String name, Object value) throws IOException {
+        if (compact && value == null) {
+            return;
+        }
+        out.writeFieldName(name);
+        // the few nested values have their own serializers
+        out.writeObject(value);
+    }
+}
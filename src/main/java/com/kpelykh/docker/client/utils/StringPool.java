@@ -0,0 +1,70 @@
+package com.kpelykh.docker.client.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded pool of canonical strings, for values that repeat across a listing such as
+ * image names and commands. It is a fixed-size table indexed by hash: a string that
+ * collides with another replaces it, so the pool never grows and stale values age out.
+ * Lookups from a character buffer only allocate a string when it isn't pooled yet.
+ *
+ * Thread-safe; concurrent callers may occasionally get equal but distinct instances.
+ */
+public class StringPool {
+
+    private final AtomicReferenceArray<String> table;
+    private final int mask;
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two
+     */
+    public StringPool(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        table = new AtomicReferenceArray<String>(size);
+        mask = size - 1;
+    }
+
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        int index = spread(value.hashCode()) & mask;
+        String pooled = table.get(index);
+        if (value.equals(pooled)) {
+            return pooled;
+        }
+        table.set(index, value);
+        return value;
+    }
+
+    public String intern(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[offset + i];
+        }
+        int index = spread(hash) & mask;
+        String pooled = table.get(index);
+        if (pooled != null && pooled.hashCode() == hash && equals(pooled, chars, offset, length)) {
+            return pooled;
+        }
+        String value = new String(chars, offset, length);
+        table.set(index, value);
+        return value;
+    }
+
+    private static boolean equals(String s, char[] chars, int offset, int length) {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
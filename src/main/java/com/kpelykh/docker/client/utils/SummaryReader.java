@@ -0,0 +1,171 @@
+package com.kpelykh.docker.client.utils;
+
+import com.kpelykh.docker.client.model.ContainerSummary;
+import com.kpelykh.docker.client.model.ImageSummary;
+import com.kpelykh.docker.client.model.PackedId;
+import com.kpelykh.docker.client.model.Ports;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes container and image listings into {@link ContainerSummary} and
+ * {@link ImageSummary}, packing ids and taking strings from a {@link StringPool} straight
+ * from the parser's buffer.
+ */
+public class SummaryReader {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final String[] NO_STRINGS = new String[0];
+
+    private final StringPool pool;
+    private final Ports.Deserializer portsDeserializer = new Ports.Deserializer();
+
+    public SummaryReader(StringPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Reads a container listing, and closes the stream.
+     */
+    public List<ContainerSummary> readContainers(InputStream in) throws IOException {
+        JsonParser parser = open(in);
+        try {
+            List<ContainerSummary> containers = new ArrayList<ContainerSummary>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                containers.add(readContainer(parser));
+            }
+            return containers;
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Reads an image listing, and closes the stream.
+     */
+    public List<ImageSummary> readImages(InputStream in) throws IOException {
+        JsonParser parser = open(in);
+        try {
+            List<ImageSummary> images = new ArrayList<ImageSummary>();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                images.add(readImage(parser));
+            }
+            return images;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static JsonParser open(InputStream in) throws IOException {
+        JsonParser parser = FACTORY.createJsonParser(in);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new JsonParseException("Expected a JSON array", parser.getCurrentLocation());
+        }
+        return parser;
+    }
+
+    private ContainerSummary readContainer(JsonParser parser) throws IOException {
+        PackedId id = null;
+        String[] names = null;
+        String image = null;
+        String command = null;
+        long created = 0;
+        String status = null;
+        Ports ports = null;
+        int size = 0;
+        int sizeRootFs = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("Id".equals(name)) {
+                id = readId(parser);
+            } else if ("Names".equals(name)) {
+                // unique to each container, so not worth pooling
+                names = readStrings(parser, false);
+            } else if ("Image".equals(name)) {
+                image = readString(parser);
+            } else if ("Command".equals(name)) {
+                command = readString(parser);
+            } else if ("Created".equals(name)) {
+                created = parser.getLongValue();
+            } else if ("Status".equals(name)) {
+                // "Up 3 hours" and the like are nearly unique, and would evict the strings that repeat
+                status = parser.getText();
+            } else if ("Ports".equals(name)) {
+                ports = portsDeserializer.deserialize(parser, null);
+            } else if ("SizeRw".equals(name)) {
+                size = parser.getIntValue();
+            } else if ("SizeRootFs".equals(name)) {
+                sizeRootFs = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new ContainerSummary(id, names, image, command, created, status, ports, size, sizeRootFs);
+    }
+
+    private ImageSummary readImage(JsonParser parser) throws IOException {
+        PackedId id = null;
+        PackedId parentId = null;
+        String[] repoTags = null;
+        long created = 0;
+        long size = 0;
+        long virtualSize = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("Id".equals(name)) {
+                id = readId(parser);
+            } else if ("ParentId".equals(name)) {
+                parentId = readId(parser);
+            } else if ("RepoTags".equals(name)) {
+                repoTags = readStrings(parser, true);
+            } else if ("Created".equals(name)) {
+                created = parser.getLongValue();
+            } else if ("Size".equals(name)) {
+                size = parser.getLongValue();
+            } else if ("VirtualSize".equals(name)) {
+                virtualSize = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new ImageSummary(id, parentId, repoTags, created, size, virtualSize);
+    }
+
+    private static PackedId readId(JsonParser parser) throws IOException {
+        return PackedId.of(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+
+    private String readString(JsonParser parser) throws IOException {
+        return pool.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+
+    private String[] readStrings(JsonParser parser, boolean pooled) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException("Expected a JSON array", parser.getCurrentLocation());
+        }
+        List<String> values = new ArrayList<String>(2);
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_NULL) {
+                values.add(null);
+            } else {
+                values.add(pooled ? readString(parser) : parser.getText());
+            }
+        }
+        return values.toArray(NO_STRINGS);
+    }
+}
@@ -0,0 +1,277 @@
+package com.kpelykh.docker.client.utils;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.archivers.zip.ZipEncoding;
+import org.apache.commons.compress.archivers.zip.ZipEncodingHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes a tar archive straight to a channel.
+ *
+ * Entry headers are formatted by commons-compress, but file bodies never pass through
+ * a Java byte array: when the target is a file or socket channel they are moved with
+ * {@link FileChannel#transferTo}, which lets the kernel copy the data directly, and
+ * otherwise through a single large direct buffer.
+ *
+ * Numeric header fields that overflow the ustar octal fields, such as the size of a
+ * file over 8 GB, are written in the GNU base-256 encoding. Sparse files can be written
+ * in the PAX 1.0 sparse format, which stores only their data regions.
+ */
+public class TarChannelWriter {
+
+    public static final int RECORD_SIZE = 512;
+    public static final int BLOCK_SIZE = 20 * RECORD_SIZE;
+
+    /** GNU type flag for an entry holding the long link name of the next entry. */
+    private static final byte LF_GNUTYPE_LONGLINK = (byte) 'K';
+
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+    private static final long MAX_TRANSFER = 8 * 1024 * 1024;
+
+    private final WritableByteChannel out;
+    private final boolean kernelCopy;
+    private final ZipEncoding encoding = ZipEncodingHelper.getZipEncoding(null);
+    private final byte[] header = new byte[RECORD_SIZE];
+    private ByteBuffer copyBuffer;
+    private long bytesWritten = 0;
+    private boolean finished = false;
+
+    public TarChannelWriter(WritableByteChannel out) {
+        this.out = out;
+        this.kernelCopy = out instanceof FileChannel || out instanceof SelectableChannel;
+    }
+
+    /**
+     * Writes the header of an entry that has no body, such as a directory.
+     */
+    public void putEntry(TarArchiveEntry entry) throws IOException {
+        writeHeader(entry);
+    }
+
+    /**
+     * Writes the header of an entry followed by the contents of the given file.
+     * The entry's size must match the file's length.
+     */
+    public void putFile(TarArchiveEntry entry, File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            putFile(entry, in.getChannel());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the header of an entry followed by {@code entry.getSize()} bytes read from
+     * the start of the given channel.
+     */
+    public void putFile(TarArchiveEntry entry, FileChannel body) throws IOException {
+        writeHeader(entry);
+        long size = entry.getSize();
+        copyRegion(body, 0, size);
+        bytesWritten += size;
+        pad();
+    }
+
+    /**
+     * Writes a file as a PAX 1.0 sparse entry holding only the data regions of the map.
+     * Readers that understand the format restore the file under the entry's name with
+     * its holes; others extract the raw map and data under a GNUSparseFile.0 directory.
+     */
+    public void putSparseFile(TarArchiveEntry entry, FileChannel body, SparseMap map) throws IOException {
+        String name = entry.getName();
+        String baseName = name.substring(name.lastIndexOf('/') + 1);
+        if (baseName.length() > 80) {
+            baseName = baseName.substring(0, 80);
+        }
+
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("GNU.sparse.major", "1");
+        headers.put("GNU.sparse.minor", "0");
+        headers.put("GNU.sparse.name", name);
+        headers.put("GNU.sparse.realsize", String.valueOf(map.getRealSize()));
+        writePaxHeaders("./PaxHeaders.0/" + baseName, headers);
+
+        TarArchiveEntry data = new TarArchiveEntry("GNUSparseFile.0/" + baseName);
+        data.setSize(map.getStoredSize());
+        data.setMode(entry.getMode());
+        data.setModTime(entry.getModTime());
+        data.setIds(entry.getUserId(), entry.getGroupId());
+        data.setNames(entry.getUserName(), entry.getGroupName());
+        writeRecord(data);
+
+        writeFully(ByteBuffer.wrap(map.getHeader()));
+        bytesWritten += map.getHeader().length;
+        for (long[] region : map.getRegions()) {
+            copyRegion(body, region[0], region[1]);
+            bytesWritten += region[1];
+        }
+        pad();
+    }
+
+    /**
+     * Writes the header of an entry followed by the remaining bytes of the given buffer.
+     * The entry's size must match the buffer's remaining length.
+     */
+    public void putFile(TarArchiveEntry entry, ByteBuffer body) throws IOException {
+        if (body.remaining() != entry.getSize()) {
+            throw new IOException("Entry " + entry.getName() + " changed size while being archived");
+        }
+        writeHeader(entry);
+        bytesWritten += body.remaining();
+        writeFully(body);
+        pad();
+    }
+
+    /**
+     * Writes the end-of-archive marker and pads the archive to a whole block.
+     * The channel is left open.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        long end = bytesWritten + 2 * RECORD_SIZE;
+        long padded = (end + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        writeFully(ByteBuffer.allocate((int) (padded - bytesWritten)));
+        bytesWritten = padded;
+        finished = true;
+    }
+
+    /**
+     * @return number of bytes written to the channel so far
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void writeHeader(TarArchiveEntry entry) throws IOException {
+        if (finished) {
+            throw new IOException("Archive already finished");
+        }
+        if (entry.isLink() || entry.isSymbolicLink()) {
+            writeLongName(entry.getLinkName(), LF_GNUTYPE_LONGLINK);
+        }
+        writeLongName(entry.getName(), TarConstants.LF_GNUTYPE_LONGNAME);
+        writeRecord(entry);
+    }
+
+    /**
+     * Names that don't fit in the header are preceded by a GNU pseudo-entry whose
+     * body is the full NUL-terminated name.
+     */
+    private void writeLongName(String value, byte type) throws IOException {
+        ByteBuffer name = encoding.encode(value);
+        int nameLength = name.limit() - name.position();
+        if (nameLength >= TarConstants.NAMELEN) {
+            TarArchiveEntry longName = new TarArchiveEntry(TarConstants.GNU_LONGLINK, type);
+            longName.setSize(nameLength + 1);
+            // the entry is stamped with the current time otherwise, which would make
+            // archives of the same files differ
+            longName.setModTime(0L);
+            writeRecord(longName);
+            writeFully(name);
+            writeFully(ByteBuffer.allocate(1));
+            bytesWritten += nameLength + 1;
+            pad();
+        }
+    }
+
+    /**
+     * Writes a PAX extended header entry applying to the next entry.
+     */
+    private void writePaxHeaders(String name, Map<String, String> headers) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            // each record is "<length> <key>=<value>\n", where length counts the whole record
+            String record = " " + header.getKey() + "=" + header.getValue() + "\n";
+            int recordLength = record.getBytes("UTF-8").length;
+            int length = recordLength + String.valueOf(recordLength).length();
+            if (String.valueOf(length).length() != String.valueOf(recordLength).length()) {
+                length = recordLength + String.valueOf(length).length();
+            }
+            sb.append(length).append(record);
+        }
+        byte[] body = sb.toString().getBytes("UTF-8");
+
+        TarArchiveEntry pax = new TarArchiveEntry(name, TarConstants.LF_PAX_EXTENDED_HEADER_LC);
+        pax.setSize(body.length);
+        writeRecord(pax);
+        writeFully(ByteBuffer.wrap(body));
+        bytesWritten += body.length;
+        pad();
+    }
+
+    private void writeRecord(TarArchiveEntry entry) throws IOException {
+        Arrays.fill(header, (byte) 0);
+        // star mode switches fields that overflow octal to base-256 instead of failing
+        entry.writeEntryHeader(header, encoding, true);
+        writeFully(ByteBuffer.wrap(header));
+        bytesWritten += RECORD_SIZE;
+    }
+
+    private void copyRegion(FileChannel body, long offset, long length) throws IOException {
+        if (kernelCopy) {
+            transfer(body, offset, length);
+        } else {
+            copy(body, offset, length);
+        }
+    }
+
+    private void transfer(FileChannel body, long offset, long length) throws IOException {
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            long n = body.transferTo(position, Math.min(end - position, MAX_TRANSFER), out);
+            if (n <= 0) {
+                throw new IOException("File shrank while being archived");
+            }
+            position += n;
+        }
+    }
+
+    private void copy(FileChannel body, long offset, long length) throws IOException {
+        if (copyBuffer == null) {
+            copyBuffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        }
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            copyBuffer.clear();
+            if (end - position < copyBuffer.capacity()) {
+                copyBuffer.limit((int) (end - position));
+            }
+            if (body.read(copyBuffer, position) <= 0) {
+                throw new IOException("File shrank while being archived");
+            }
+            copyBuffer.flip();
+            position += copyBuffer.remaining();
+            writeFully(copyBuffer);
+        }
+    }
+
+    private void pad() throws IOException {
+        int tail = (int) (bytesWritten % RECORD_SIZE);
+        if (tail != 0) {
+            writeFully(ByteBuffer.allocate(RECORD_SIZE - tail));
+            bytesWritten += RECORD_SIZE - tail;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.kpelykh.docker.client.utils;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Extracts a tar stream into a directory as it is read, without holding the archive.
+ *
+ * The stream is read through a large buffer and large files are written as they arrive.
+ * With writer threads enabled, small files are read into memory, up to a bounded number
+ * of bytes, and written and closed on the writer threads while the stream moves on,
+ * which hides the cost of creating many files.
+ *
+ * Only regular files, directories and hard links are extracted; symbolic links and
+ * special files are skipped. Entries whose names leave the target directory are rejected.
+ */
+public class TarExtractor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TarExtractor.class);
+
+    public static final int DEFAULT_BUFFERED_FILE_SIZE = 1024 * 1024;
+    public static final int DEFAULT_BUFFERED_BYTES = 64 * 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+    private final File targetDir;
+    private int threads = 0;
+    private int bufferedFileSize = DEFAULT_BUFFERED_FILE_SIZE;
+    private int bufferedBytes = DEFAULT_BUFFERED_BYTES;
+    private String[] includes;
+    private final AtomicLong filesExtracted = new AtomicLong();
+    private final AtomicLong bytesExtracted = new AtomicLong();
+
+    /**
+     * @param targetDir directory to extract into; it is created if needed
+     */
+    public TarExtractor(File targetDir) {
+        this.targetDir = targetDir;
+    }
+
+    /**
+     * @param threads number of threads writing small files, or 0 to write everything on the reading thread
+     */
+    public TarExtractor setThreads(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Thread count can't be negative");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param bufferedFileSize files up to this size are handed to the writer threads
+     */
+    public TarExtractor setBufferedFileSize(int bufferedFileSize) {
+        this.bufferedFileSize = bufferedFileSize;
+        return this;
+    }
+
+    /**
+     * @param bufferedBytes upper bound on the bytes of file content held in memory for the writer threads
+     */
+    public TarExtractor setBufferedBytes(int bufferedBytes) {
+        this.bufferedBytes = bufferedBytes;
+        return this;
+    }
+
+    /**
+     * Extracts only entries whose path, or the path of one of their parent directories,
+     * matches one of the patterns. Patterns use the wildcards of
+     * {@link FilenameUtils#wildcardMatch(String, String)}, where * also matches '/'.
+     *
+     * @param includes patterns, or none to extract everything
+     */
+    public TarExtractor setIncludes(String... includes) {
+        this.includes = includes == null || includes.length == 0 ? null : includes;
+        return this;
+    }
+
+    /**
+     * @return number of files written by the last extraction
+     */
+    public long getFilesExtracted() {
+        return filesExtracted.get();
+    }
+
+    /**
+     * @return bytes of file content written by the last extraction
+     */
+    public long getBytesExtracted() {
+        return bytesExtracted.get();
+    }
+
+    /**
+     * Extracts the tar stream into the target directory. The stream is read up to the end
+     * of the archive but not closed.
+     */
+    public void extract(InputStream tar) throws IOException {
+        filesExtracted.set(0);
+        bytesExtracted.set(0);
+        FileUtils.forceMkdir(targetDir);
+
+        TarArchiveInputStream in = new TarArchiveInputStream(new BufferedInputStream(tar, READ_BUFFER_SIZE));
+        ExecutorService executor = threads == 0 ? null : Executors.newFixedThreadPool(threads, new DaemonThreadFactory("docker-java-extract"));
+        Semaphore window = new Semaphore(bufferedBytes);
+        List<Future<Void>> writes = new LinkedList<Future<Void>>();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        try {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextTarEntry()) != null) {
+                String name = normalize(entry.getName());
+                if (name.length() == 0 || !isIncluded(name)) {
+                    continue;
+                }
+                File file = new File(targetDir, name);
+                if (entry.isDirectory()) {
+                    FileUtils.forceMkdir(file);
+                } else if (entry.isLink()) {
+                    // the link target must be complete before it is copied
+                    await(writes, 0);
+                    File linked = new File(targetDir, normalize(entry.getLinkName()));
+                    if (linked.isFile()) {
+                        FileUtils.copyFile(linked, file);
+                        setMetadata(file, entry);
+                        filesExtracted.incrementAndGet();
+                        bytesExtracted.addAndGet(file.length());
+                    } else {
+                        LOGGER.debug("Skipping link {} to {}, which was not extracted", name, entry.getLinkName());
+                    }
+                } else if (entry.isFile()) {
+                    FileUtils.forceMkdir(file.getParentFile());
+                    if (executor != null && entry.getSize() <= bufferedFileSize) {
+                        int size = (int) entry.getSize();
+                        int permits = Math.min(size, bufferedBytes);
+                        window.acquire(permits);
+                        byte[] data = new byte[size];
+                        IOUtils.readFully(in, data);
+                        writes.add(executor.submit(new WriteFile(file, entry, data, window, permits)));
+                        await(writes, 4 * threads);
+                    } else {
+                        OutputStream out = new FileOutputStream(file);
+                        try {
+                            IOUtils.copyLarge(in, out, buffer);
+                        } finally {
+                            out.close();
+                        }
+                        setMetadata(file, entry);
+                        filesExtracted.incrementAndGet();
+                        bytesExtracted.addAndGet(entry.getSize());
+                    }
+                } else {
+                    LOGGER.debug("Skipping {}, which is not a regular file", name);
+                }
+            }
+            await(writes, 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting to " + targetDir);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private boolean isIncluded(String name) {
+        if (includes == null) {
+            return true;
+        }
+        for (String path = name; path != null; path = parent(path)) {
+            for (String include : includes) {
+                if (FilenameUtils.wildcardMatch(path, strip(include))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String parent(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : null;
+    }
+
+    /**
+     * Strips the name and rejects names that climb out of the target directory.
+     */
+    private static String normalize(String name) throws IOException {
+        String normalized = strip(name);
+        for (String segment : normalized.split("/")) {
+            if (segment.equals("..")) {
+                throw new IOException("Entry " + name + " is outside the target directory");
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * Strips leading "./" and "/" and trailing "/".
+     */
+    private static String strip(String name) {
+        String stripped = name;
+        while (stripped.startsWith("./") || stripped.startsWith("/")) {
+            stripped = stripped.substring(stripped.indexOf('/') + 1);
+        }
+        while (stripped.endsWith("/")) {
+            stripped = stripped.substring(0, stripped.length() - 1);
+        }
+        return stripped.equals(".") ? "" : stripped;
+    }
+
+    private static void setMetadata(File file, TarArchiveEntry entry) {
+        file.setLastModified(entry.getModTime().getTime());
+        if ((entry.getMode() & 0100) != 0) {
+            file.setExecutable(true);
+        }
+    }
+
+    /**
+     * Waits until at most {@code pending} writes are outstanding, rethrowing their failures.
+     */
+    private static void await(List<Future<Void>> writes, int pending) throws IOException, InterruptedException {
+        for (Iterator<Future<Void>> it = writes.iterator(); it.hasNext() && writes.size() > pending; ) {
+            Future<Void> write = it.next();
+            try {
+                write.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            it.remove();
+        }
+    }
+
+    private class WriteFile implements Callable<Void> {
+        private final File file;
+        private final TarArchiveEntry entry;
+        private final byte[] data;
+        private final Semaphore window;
+        private final int permits;
+
+        WriteFile(File file, TarArchiveEntry entry, byte[] data, Semaphore window, int permits) {
+            this.file = file;
+            this.entry = entry;
+            this.data = data;
+            this.window = window;
+            this.permits = permits;
+        }
+
+        public Void call() throws IOException {
+            try {
+                FileUtils.writeByteArrayToFile(file, data);
+                setMetadata(file, entry);
+                filesExtracted.incrementAndGet();
+                bytesExtracted.addAndGet(data.length);
+            } finally {
+                window.release(permits);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.kpelykh.docker.client.utils;
+
+import com.sun.jersey.api.client.AbstractClientRequestAdapter;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientRequestAdapter;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs requests and responses at DEBUG on the "com.kpelykh.docker.client.wire" logger.
+ * While that level is off, requests pass straight through.
+ *
+ * Requests can be sampled per endpoint, by path prefix below the API version, e.g.
+ * "/containers/json". Entities are captured as they stream past, up to a byte limit, and
+ * only when they are JSON or text, so pulls, builds and other streams are never buffered.
+ */
+public class WireLoggingFilter extends ClientFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("com.kpelykh.docker.client.wire");
+
+    private final AtomicLong ids = new AtomicLong();
+    private final List<Sampler> samplers = new ArrayList<Sampler>();
+    private volatile Sampler defaultSampler = new Sampler("", 1.0);
+    private volatile int maxEntityBytes = 1024;
+
+    /**
+     * @param rate fraction of requests to log, from 0 to 1
+     */
+    public void setSampleRate(double rate) {
+        defaultSampler = new Sampler("", rate);
+    }
+
+    /**
+     * @param pathPrefix path below the API version, such as "/containers/json"; the longest
+     *                   matching prefix applies
+     * @param rate fraction of requests to log, from 0 to 1
+     */
+    public synchronized void setSampleRate(String pathPrefix, double rate) {
+        for (int i = 0; i < samplers.size(); i++) {
+            if (samplers.get(i).prefix.equals(pathPrefix)) {
+                samplers.remove(i);
+                break;
+            }
+        }
+        samplers.add(new Sampler(pathPrefix, rate));
+    }
+
+    /**
+     * @param maxEntityBytes the most bytes of each entity to log; 0 to log no entities
+     */
+    public void setMaxEntityBytes(int maxEntityBytes) {
+        this.maxEntityBytes = maxEntityBytes;
+    }
+
+    @Override
+    public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+        if (!LOGGER.isDebugEnabled() || !sampler(endpoint(request.getURI().getPath())).sample()) {
+            return getNext().handle(request);
+        }
+
+        long id = ids.incrementAndGet();
+        int limit = maxEntityBytes;
+        LOGGER.debug("{} > {} {}", new Object[]{id, request.getMethod(), request.getURI()});
+        Capture requestEntity = null;
+        if (request.getEntity() != null && limit > 0 && isText(request.getHeaders().getFirst("Content-Type"))) {
+            requestEntity = new Capture(limit);
+            request.setAdapter(new CapturingAdapter(request.getAdapter(), requestEntity));
+        }
+
+        long start = System.nanoTime();
+        ClientResponse response = getNext().handle(request);
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        if (requestEntity != null) {
+            LOGGER.debug("{} > {}", id, requestEntity);
+        }
+        String type = response.getHeaders().getFirst("Content-Type");
+        LOGGER.debug("{} < {} {} in {} ms", new Object[]{id, response.getStatus(), type, millis});
+        if (limit > 0 && isText(type) && response.hasEntity()) {
+            response.setEntityInputStream(new CapturingInputStream(response.getEntityInputStream(), id, new Capture(limit)));
+        }
+        return response;
+    }
+
+    /**
+     * Logs a request that was sent without going through the client, such as an import
+     * sent with sendfile. It is sampled like the others; its entities are not captured.
+     */
+    public void logExchange(String method, URI uri, long requestBytes, int status, long millis) {
+        if (!LOGGER.isDebugEnabled() || !sampler(endpoint(uri.getPath())).sample()) {
+            return;
+        }
+        long id = ids.incrementAndGet();
+        LOGGER.debug("{} > {} {} ({} bytes)", new Object[]{id, method, uri, requestBytes});
+        LOGGER.debug("{} < {} in {} ms", new Object[]{id, status, millis});
+    }
+
+    private synchronized Sampler sampler(String endpoint) {
+        Sampler match = null;
+        for (Sampler sampler : samplers) {
+            if (endpoint.startsWith(sampler.prefix) && (match == null || sampler.prefix.length() > match.prefix.length())) {
+                match = sampler;
+            }
+        }
+        return match == null ? defaultSampler : match;
+    }
+
+    /**
+     * @return the path without the leading version segment, e.g. /containers/json
+     */
+    private static String endpoint(String path) {
+        if (path.startsWith("/v")) {
+            int slash = path.indexOf('/', 1);
+            return slash < 0 ? path : path.substring(slash);
+        }
+        return path;
+    }
+
+    private static boolean isText(Object contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toString();
+        return type.contains("json") || type.startsWith("text/");
+    }
+
+    /**
+     * Logs every request whose sequence number crosses a multiple of 1 / rate, so a rate
+     * of 0.1 logs exactly one request in ten.
+     */
+    private static class Sampler {
+        final String prefix;
+        final double rate;
+        final AtomicLong count = new AtomicLong();
+
+        Sampler(String prefix, double rate) {
+            if (rate < 0 || rate > 1) {
+                throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + rate);
+            }
+            this.prefix = prefix;
+            this.rate = rate;
+        }
+
+        boolean sample() {
+            if (rate >= 1) {
+                return true;
+            }
+            long n = count.incrementAndGet();
+            return (long) (n * rate) != (long) ((n - 1) * rate);
+        }
+    }
+
+    /**
+     * The first bytes of an entity, and the total length seen.
+     */
+    private static class Capture {
+        final ByteArrayOutputStream bytes;
+        final int limit;
+        long total = 0;
+
+        Capture(int limit) {
+            this.limit = limit;
+            this.bytes = new ByteArrayOutputStream(Math.min(limit, 256));
+        }
+
+        void write(byte[] b, int off, int len) {
+            int keep = (int) Math.min(len, Math.max(0, limit - total));
+            if (keep > 0) {
+                bytes.write(b, off, keep);
+            }
+            total += len;
+        }
+
+        @Override
+        public String toString() {
+            try {
+                String text = bytes.toString("UTF-8");
+                return total > limit ? text + "... (" + total + " bytes)" : text;
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class CapturingAdapter extends AbstractClientRequestAdapter {
+        private final Capture capture;
+
+        CapturingAdapter(ClientRequestAdapter adapter, Capture capture) {
+            super(adapter);
+            this.capture = capture;
+        }
+
+        public OutputStream adapt(ClientRequest request, OutputStream out) throws IOException {
+            return new FilterOutputStream(getAdapter().adapt(request, out)) {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    capture.write(b, off, len);
+                }
+            };
+        }
+    }
+
+    private static class CapturingInputStream extends FilterInputStream {
+        private final long id;
+        private final Capture capture;
+        private boolean logged = false;
+
+        CapturingInputStream(InputStream in, long id, Capture capture) {
+            super(in);
+            this.id = id;
+            this.capture = capture;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                capture.write(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                capture.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!logged) {
+                    logged = true;
+                    LOGGER.debug("{} < {}", id, capture);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.model.BuildEvent;
+import com.kpelykh.docker.client.utils.BuildEventReader;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link BuildEventReader} on recorded build output.
+ */
+public class BuildEventReaderTest extends Assert {
+
+    @Test
+    public void testSuccessfulBuild() throws IOException {
+        BuildEventReader reader = reader(
+                "{\"stream\":\"Step 0 : FROM busybox\\n\"}",
+                "{\"stream\":\" ---> e9aa60c60128\\n\"}",
+                "{\"stream\":\"Step 1 : ADD . /app\\n\"}",
+                "{\"stream\":\" ---> Using cache\\n\"}",
+                "{\"stream\":\" ---> 4b8a1c0f2d3e\\n\"}",
+                "{\"stream\":\"Step 2 : RUN make\\n\"}",
+                "{\"stream\":\" ---> Running in 7f1e2d3c4b5a\\n\"}",
+                // output lines may be split across messages
+                "{\"stream\":\"cc -o app\"}",
+                "{\"stream\":\" main.c\\n ---> 0a9b8c7d6e5f\\n\"}",
+                "{\"stream\":\"Removing intermediate container 7f1e2d3c4b5a\\n\"}",
+                "{\"stream\":\"Successfully built 0a9b8c7d6e5f\\n\"}");
+
+        List<BuildEvent.Type> types = new ArrayList<BuildEvent.Type>();
+        BuildEvent output = null;
+        while (reader.hasNext()) {
+            BuildEvent event = reader.next();
+            types.add(event.getType());
+            if (event.getType() == BuildEvent.Type.OUTPUT && output == null) {
+                output = event;
+            }
+        }
+
+        assertEquals(types.size(), 11);
+        assertEquals(types.get(types.size() - 1), BuildEvent.Type.SUCCESS);
+        assertEquals(output.getMessage(), "cc -o app main.c");
+        assertEquals(output.getStep(), 2);
+
+        List<BuildEvent> steps = reader.getSteps();
+        assertEquals(steps.size(), 3);
+        assertFalse(steps.get(0).isCached());
+        assertTrue(steps.get(1).isCached());
+        assertEquals(steps.get(1).getInstruction(), "ADD . /app");
+        assertEquals(steps.get(2).getId(), "0a9b8c7d6e5f");
+        assertEquals(steps.get(2).getStep(), 2);
+    }
+
+    @Test
+    public void testFailedBuild() throws IOException {
+        BuildEventReader reader = reader(
+                "{\"stream\":\"Step 0 : FROM busybox\\n\"}",
+                "{\"stream\":\" ---> e9aa60c60128\\n\"}",
+                "{\"stream\":\"Step 1 : RUN false\\n\"}",
+                "{\"stream\":\" ---> Running in 7f1e2d3c4b5a\\n\"}",
+                "{\"error\":\"The command [/bin/sh -c false] returned a non-zero code: 1\",\"errorDetail\":{\"message\":\"The command [/bin/sh -c false] returned a non-zero code: 1\"}}");
+
+        BuildEvent last = null;
+        while (reader.hasNext()) {
+            last = reader.next();
+        }
+        assertEquals(last.getType(), BuildEvent.Type.ERROR);
+        assertEquals(last.getStep(), 1);
+        assertEquals(last.getInstruction(), "RUN false");
+        assertTrue(last.getMessage().contains("non-zero code"));
+
+        assertNull(reader(
+                "{\"stream\":\"Step 0 : FROM missing\\n\"}",
+                "{\"error\":\"No such image\"}").awaitImageId());
+    }
+
+    private static BuildEventReader reader(String... messages) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String message : messages) {
+            sb.append(message);
+        }
+        return new BuildEventReader(new ByteArrayInputStream(sb.toString().getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,247 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.BuildScheduler;
+import com.kpelykh.docker.client.DockerException;
+import com.kpelykh.docker.client.DockerClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests {@link BuildScheduler} against local stand-ins for daemons whose builds take a while.
+ */
+public class BuildSchedulerTest extends Assert {
+
+    private List<FakeDaemon> daemons = new ArrayList<FakeDaemon>();
+    private List<File> contexts = new ArrayList<File>();
+
+    @AfterMethod
+    public void cleanUp() {
+        for (FakeDaemon daemon : daemons) {
+            daemon.server.stop();
+        }
+        daemons.clear();
+        for (File context : contexts) {
+            FileUtils.deleteQuietly(context);
+        }
+        contexts.clear();
+    }
+
+    @Test
+    public void testLimitsAndSharesBuilds() throws Exception {
+        FakeDaemon first = start(200);
+        FakeDaemon second = start(200);
+        BuildScheduler scheduler = new BuildScheduler()
+                .addDaemon(first.client(), 1)
+                .addDaemon(second.client(), 2);
+
+        List<Future<BuildScheduler.Result>> results = new ArrayList<Future<BuildScheduler.Result>>();
+        for (int i = 0; i < 6; i++) {
+            results.add(scheduler.submit(context("app" + i), "app" + i, false, 0));
+        }
+        // same context as app0 under another tag, while app0 builds
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!first.builds.contains("app0") && !second.builds.contains("app0") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Future<BuildScheduler.Result> shared = scheduler.submit(context("app0"), "mirror/app0:latest", false, 0);
+
+        for (Future<BuildScheduler.Result> result : results) {
+            assertNotNull(result.get().getImageId());
+        }
+        assertTrue(shared.get().isShared());
+        assertEquals(shared.get().getImageId(), results.get(0).get().getImageId());
+        scheduler.shutdown();
+
+        assertEquals(first.builds.size() + second.builds.size(), 6);
+        assertEquals(first.maxRunning.get(), 1);
+        assertTrue(second.maxRunning.get() <= 2);
+        List<String> tags = new ArrayList<String>(first.tags);
+        tags.addAll(second.tags);
+        assertEquals(tags.size(), 1);
+        assertTrue(tags.get(0).contains("repo=mirror/app0") && tags.get(0).contains("tag=latest"), tags.get(0));
+    }
+
+    @Test
+    public void testPriorities() throws Exception {
+        FakeDaemon daemon = start(300);
+        BuildScheduler scheduler = new BuildScheduler().addDaemon(daemon.client(), 1);
+
+        Future<BuildScheduler.Result> running = scheduler.submit(context("running"), "running", false, 0);
+        awaitStarted(daemon, 1);
+        Future<BuildScheduler.Result> low = scheduler.submit(context("low"), "low", false, 0);
+        Future<BuildScheduler.Result> high = scheduler.submit(context("high"), "high", false, 10);
+        awaitQueued(scheduler, 2);
+        running.get();
+        low.get();
+        high.get();
+        scheduler.shutdown();
+
+        assertEquals(daemon.builds, Arrays.asList("running", "high", "low"));
+    }
+
+    @Test
+    public void testShutdownFailsQueuedBuilds() throws Exception {
+        FakeDaemon daemon = start(300);
+        BuildScheduler scheduler = new BuildScheduler().addDaemon(daemon.client(), 1);
+
+        Future<BuildScheduler.Result> running = scheduler.submit(context("running"), "running", false, 0);
+        awaitStarted(daemon, 1);
+        Future<BuildScheduler.Result> queued = scheduler.submit(context("queued"), "queued", false, 0);
+        awaitQueued(scheduler, 1);
+        scheduler.shutdown();
+
+        try {
+            queued.get(5, TimeUnit.SECONDS);
+            fail("queued build should fail on shutdown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DockerException, String.valueOf(e.getCause()));
+        }
+        assertEquals(scheduler.getQueuedBuilds(), 0);
+        // the running build is left to finish
+        assertNotNull(running.get(5, TimeUnit.SECONDS).getImageId());
+        try {
+            scheduler.submit(context("late"), "late", false, 0);
+            fail("submit after shutdown should be rejected");
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(daemon.builds, Arrays.asList("running"));
+    }
+
+    @Test
+    public void testSourcesOutsideTheFolderAreKeyed() throws Exception {
+        FakeDaemon daemon = start(200);
+        BuildScheduler scheduler = new BuildScheduler().addDaemon(daemon.client(), 2);
+
+        // identical folders whose Dockerfiles ADD different files from outside them
+        Future<BuildScheduler.Result> first = scheduler.submit(outsideContext("one"), "first", false, 0);
+        Future<BuildScheduler.Result> second = scheduler.submit(outsideContext("two"), "second", false, 0);
+        assertFalse(first.get().isShared());
+        assertFalse(second.get().isShared());
+        scheduler.shutdown();
+
+        assertEquals(daemon.builds.size(), 2);
+        assertTrue(daemon.tags.isEmpty());
+    }
+
+    @Test
+    public void testUnreadableContextFailsItsJob() throws Exception {
+        FakeDaemon daemon = start(0);
+        BuildScheduler scheduler = new BuildScheduler().addDaemon(daemon.client(), 1);
+        File context = context("broken");
+        FileUtils.writeStringToFile(new File(context, "Dockerfile"), "FROM busybox\nADD missing.txt /missing.txt\n");
+
+        try {
+            scheduler.submit(context, "broken", false, 0).get(5, TimeUnit.SECONDS);
+            fail("a context with a missing source should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DockerException, String.valueOf(e.getCause()));
+        }
+        scheduler.shutdown();
+        assertTrue(daemon.builds.isEmpty());
+    }
+
+    private File outsideContext(String content) throws IOException {
+        File root = File.createTempFile("outside", "");
+        root.delete();
+        FileUtils.writeStringToFile(new File(root, "context/Dockerfile"), "FROM busybox\nADD ../data/app.txt /app.txt\n");
+        FileUtils.writeStringToFile(new File(root, "data/app.txt"), content);
+        contexts.add(root);
+        return new File(root, "context");
+    }
+
+    private static void awaitStarted(FakeDaemon daemon, int builds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (daemon.builds.size() < builds && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(daemon.builds.size(), builds);
+    }
+
+    private static void awaitQueued(BuildScheduler scheduler, int builds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scheduler.getQueuedBuilds() < builds && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(scheduler.getQueuedBuilds(), builds);
+    }
+
+    private File context(String content) throws IOException {
+        File dir = File.createTempFile("context", "");
+        dir.delete();
+        FileUtils.writeStringToFile(new File(dir, "Dockerfile"), "FROM busybox\nADD app.txt /app.txt\n");
+        FileUtils.writeStringToFile(new File(dir, "app.txt"), content);
+        contexts.add(dir);
+        return dir;
+    }
+
+    private FakeDaemon start(long buildMillis) throws IOException {
+        FakeDaemon daemon = new FakeDaemon(buildMillis);
+        daemons.add(daemon);
+        return daemon;
+    }
+
+    private static class FakeDaemon {
+        final StandInDaemon server;
+        final List<String> builds = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> tags = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        FakeDaemon(final long buildMillis) throws IOException {
+            server = new StandInDaemon(new HttpHandler() {
+                public void handle(HttpExchange exchange) throws IOException {
+                    String path = exchange.getRequestURI().getPath();
+                    String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+                    IOUtils.toByteArray(exchange.getRequestBody());
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    if (path.endsWith("/tag")) {
+                        tags.add(query);
+                        exchange.sendResponseHeaders(201, -1);
+                        exchange.close();
+                        return;
+                    }
+                    String tag = query.substring("t=".length());
+                    builds.add(tag);
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), now));
+                    }
+                    try {
+                        Thread.sleep(buildMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    exchange.sendResponseHeaders(200, 0);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(("{\"stream\":\"Step 0 : FROM busybox\\n\"}{\"stream\":\" ---> e9aa60c60128\\n\"}"
+                            + "{\"stream\":\"Successfully built " + Integer.toHexString(tag.hashCode()) + "\\n\"}").getBytes("UTF-8"));
+                    out.close();
+                }
+            }, true);
+        }
+
+        DockerClient client() {
+            return server.client();
+        }
+    }
+}
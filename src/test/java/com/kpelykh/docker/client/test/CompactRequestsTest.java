@@ -0,0 +1,107 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.DockerClient;
+import com.kpelykh.docker.client.model.ContainerConfig;
+import com.kpelykh.docker.client.model.ContainerConfigTemplate;
+import com.kpelykh.docker.client.model.HostConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.commons.io.IOUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests that compact requests leave out defaults and decode to the same models, against a
+ * local stand-in for the daemon.
+ */
+public class CompactRequestsTest extends Assert {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private StandInDaemon daemon;
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+    private DockerClient client;
+
+    @BeforeMethod
+    public void startDaemon() throws IOException {
+        daemon = new StandInDaemon(new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                bodies.add(IOUtils.toString(exchange.getRequestBody(), "UTF-8"));
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                if (exchange.getRequestURI().getPath().endsWith("/create")) {
+                    exchange.sendResponseHeaders(201, 0);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write("{\"Id\":\"e90e34656806\",\"Warnings\":[]}".getBytes("UTF-8"));
+                    out.close();
+                } else {
+                    exchange.sendResponseHeaders(204, -1);
+                    exchange.close();
+                }
+            }
+        });
+        client = daemon.client();
+    }
+
+    @AfterMethod
+    public void stopDaemon() {
+        daemon.stop();
+        bodies.clear();
+    }
+
+    @Test
+    public void testCompactBodiesDecodeTheSame() throws Exception {
+        ContainerConfig config = new ContainerConfig().setImage("busybox").setCmd(new String[]{"true"}).setTty(true);
+        HostConfig hostConfig = new HostConfig();
+        hostConfig.setLinks(new String[]{"db:db"});
+
+        client.createContainer(config);
+        client.startContainer("e90e34656806", hostConfig);
+        client.setCompactRequests(true);
+        client.createContainer(config);
+        client.startContainer("e90e34656806", hostConfig);
+        client.createContainer(new ContainerConfigTemplate(config, true), null, new String[]{"true"}, null);
+
+        assertEquals(bodies.size(), 5);
+        JsonNode compact = MAPPER.readTree(bodies.get(2));
+        assertFalse(compact.has("Hostname"));
+        assertFalse(compact.has("Memory"));
+        assertFalse(compact.has("Entrypoint"));
+        assertTrue(compact.get("Tty").asBoolean());
+        assertTrue(bodies.get(2).length() < bodies.get(0).length() / 2, bodies.get(2));
+
+        assertSameRequest(bodies.get(0), bodies.get(2));
+        assertSameRequest(bodies.get(0), bodies.get(4));
+        assertSameRequest(bodies.get(1), bodies.get(3));
+        assertFalse(MAPPER.readTree(bodies.get(3)).has("Binds"));
+    }
+
+    /**
+     * Every field left out of the compact body must hold the zero value the daemon would
+     * decode it as.
+     */
+    private static void assertSameRequest(String full, String compact) throws IOException {
+        Map<?, ?> fullFields = MAPPER.readValue(full, Map.class);
+        Map<?, ?> compactFields = MAPPER.readValue(compact, Map.class);
+        for (Map.Entry<?, ?> field : fullFields.entrySet()) {
+            Object value = field.getValue();
+            if (compactFields.containsKey(field.getKey())) {
+                assertEquals(compactFields.get(field.getKey()), value, field.getKey().toString());
+            } else {
+                assertTrue(value == null || Boolean.FALSE.equals(value) || Integer.valueOf(0).equals(value)
+                        || "".equals(value) || (value instanceof List && ((List<?>) value).isEmpty()), field.getKey() + "=" + value);
+            }
+        }
+        assertTrue(fullFields.keySet().containsAll(compactFields.keySet()));
+    }
+}
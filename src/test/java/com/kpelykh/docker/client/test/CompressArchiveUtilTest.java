@@ -0,0 +1,243 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.utils.CompressArchiveUtil;
+import com.kpelykh.docker.client.utils.ParallelContextArchiver;
+import com.kpelykh.docker.client.utils.TarChannelWriter;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Tests for {@link CompressArchiveUtil}, run without a Docker daemon.
+ */
+public class CompressArchiveUtilTest extends Assert {
+
+    private File baseDir;
+    private Map<String, byte[]> expected;
+
+    @BeforeMethod
+    public void createContext() throws IOException {
+        baseDir = new File(FileUtils.getTempDirectory(), "docker-java-test" + UUID.randomUUID());
+        expected = new HashMap<String, byte[]>();
+        Random random = new Random(7);
+
+        addFile("Dockerfile", "FROM busybox\n".getBytes("UTF-8"));
+        addFile("empty", new byte[0]);
+        for (int i = 0; i < 20; i++) {
+            byte[] small = new byte[random.nextInt(2000)];
+            random.nextBytes(small);
+            addFile("small/file" + i, small);
+        }
+        byte[] large = new byte[3 * 1024 * 1024 + 17];
+        random.nextBytes(large);
+        addFile("large/blob.bin", large);
+        addFile(StringUtils.repeat("long-directory-name/", 8) + "file.txt", "long".getBytes("UTF-8"));
+    }
+
+    @AfterMethod
+    public void deleteContext() {
+        FileUtils.deleteQuietly(baseDir);
+    }
+
+    @Test
+    public void testArchiveToFile() throws IOException {
+        File tar = CompressArchiveUtil.archiveTARFiles(baseDir, UUID.randomUUID().toString());
+        try {
+            assertEquals(tar.length() % 10240, 0);
+            assertContents(FileUtils.readFileToByteArray(tar));
+        } finally {
+            FileUtils.deleteQuietly(tar);
+        }
+    }
+
+    @Test
+    public void testArchiveToStreamChannelMatchesFile() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long written = CompressArchiveUtil.archiveTARFiles(baseDir, Channels.newChannel(buffer));
+        assertEquals(written, buffer.size());
+        assertContents(buffer.toByteArray());
+
+        File tar = CompressArchiveUtil.archiveTARFiles(baseDir, UUID.randomUUID().toString());
+        try {
+            assertEquals(buffer.toByteArray(), FileUtils.readFileToByteArray(tar));
+        } finally {
+            FileUtils.deleteQuietly(tar);
+        }
+    }
+
+    @Test
+    public void testSmallPrefetchWindowKeepsNameOrder() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new ParallelContextArchiver(3)
+                .setPrefetchFileSize(1000)
+                .setPrefetchBytes(1500)
+                .archive(baseDir, Channels.newChannel(buffer));
+
+        List<String> names = assertContents(buffer.toByteArray());
+        List<String> sorted = new ArrayList<String>(names);
+        Collections.sort(sorted);
+        assertEquals(names, sorted);
+    }
+
+    @Test
+    public void testReproducibleArchiveIgnoresMetadata() throws IOException {
+        String digest = CompressArchiveUtil.digestTARFiles(baseDir);
+        File first = CompressArchiveUtil.archiveTARFiles(baseDir, UUID.randomUUID().toString(), true);
+
+        for (String name : expected.keySet()) {
+            assertTrue(new File(baseDir, name).setLastModified(1000000000000L));
+        }
+        File second = CompressArchiveUtil.archiveTARFiles(baseDir, UUID.randomUUID().toString(), true);
+        try {
+            assertEquals(FileUtils.readFileToByteArray(first), FileUtils.readFileToByteArray(second));
+            assertEquals(CompressArchiveUtil.digestTARFiles(baseDir), digest);
+        } finally {
+            FileUtils.deleteQuietly(first);
+            FileUtils.deleteQuietly(second);
+        }
+
+        addFile("small/file0", "changed".getBytes("UTF-8"));
+        assertFalse(CompressArchiveUtil.digestTARFiles(baseDir).equals(digest));
+    }
+
+    @Test
+    public void testLongNameEntryHasFixedModTime() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        CompressArchiveUtil.archiveTARFiles(baseDir, Channels.newChannel(buffer));
+        byte[] tar = buffer.toByteArray();
+
+        int longNames = 0;
+        for (int offset = 0; offset + 512 <= tar.length; offset += 512) {
+            if (new String(tar, offset, 13, "US-ASCII").equals("././@LongLink")) {
+                // mtime is the octal field at offset 136 of the header
+                assertEquals(new String(tar, offset + 136, 11, "US-ASCII"), "00000000000");
+                longNames++;
+            }
+        }
+        assertTrue(longNames > 0);
+    }
+
+    @Test
+    public void testDeduplicatedCopiesBecomeHardLinks() throws IOException {
+        byte[] jar = expected.get("large/blob.bin");
+        String longCopy = StringUtils.repeat("vendored-library-dir/", 6) + "copy.bin";
+        addFile("vendor/a/blob.bin", jar);
+        addFile(longCopy, jar);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ParallelContextArchiver archiver = new ParallelContextArchiver().setDeduplicate(true);
+        archiver.archive(baseDir, Channels.newChannel(buffer));
+        assertEquals(archiver.getDeduplicatedBytes(), 2L * jar.length);
+
+        Map<String, String> links = new HashMap<String, String>();
+        TarArchiveInputStream in = new TarArchiveInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+        TarArchiveEntry entry;
+        while ((entry = in.getNextTarEntry()) != null) {
+            if (entry.isLink()) {
+                links.put(entry.getName(), entry.getLinkName());
+            }
+        }
+        in.close();
+
+        Map<String, String> expectedLinks = new HashMap<String, String>();
+        expectedLinks.put("vendor/a/blob.bin", "large/blob.bin");
+        expectedLinks.put(longCopy, "large/blob.bin");
+        assertEquals(links, expectedLinks);
+    }
+
+    @Test
+    public void testSparseFileStoresOnlyData() throws IOException {
+        File sparseFile = new File(baseDir, "db/prealloc.dat");
+        sparseFile.getParentFile().mkdirs();
+        RandomAccessFile raf = new RandomAccessFile(sparseFile, "rw");
+        raf.setLength(8 * 1024 * 1024);
+        raf.seek(3 * 1024 * 1024);
+        raf.write("hello".getBytes("UTF-8"));
+        raf.seek(8 * 1024 * 1024 - 3);
+        raf.write("end".getBytes("UTF-8"));
+        raf.close();
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new ParallelContextArchiver().setSparse(true).archive(baseDir, Channels.newChannel(buffer));
+        assertTrue(buffer.size() < 4 * 1024 * 1024, "sparse file was stored in full");
+
+        byte[] stored = null;
+        TarArchiveInputStream in = new TarArchiveInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+        TarArchiveEntry entry;
+        while ((entry = in.getNextTarEntry()) != null) {
+            if (entry.getName().equals("GNUSparseFile.0/prealloc.dat")) {
+                stored = IOUtils.toByteArray(in);
+            }
+        }
+        in.close();
+        assertNotNull(stored);
+
+        // rebuild the file from the PAX 1.0 map and data regions
+        String[] map = new String(stored, 0, 512, "US-ASCII").trim().split("\n");
+        assertEquals(map[0], "2");
+        byte[] restored = new byte[8 * 1024 * 1024];
+        int dataOffset = 512;
+        for (int i = 0; i < Integer.parseInt(map[0]); i++) {
+            int offset = Integer.parseInt(map[1 + 2 * i]);
+            int length = Integer.parseInt(map[2 + 2 * i]);
+            System.arraycopy(stored, dataOffset, restored, offset, length);
+            dataOffset += length;
+        }
+        assertEquals(restored, FileUtils.readFileToByteArray(sparseFile));
+    }
+
+    @Test
+    public void testSizeOver8GBUsesBase256() throws IOException {
+        TarArchiveEntry big = new TarArchiveEntry("big.img");
+        big.setSize(9L * 1024 * 1024 * 1024);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new TarChannelWriter(Channels.newChannel(buffer)).putEntry(big);
+
+        assertEquals(new TarArchiveEntry(buffer.toByteArray()).getSize(), big.getSize());
+    }
+
+    private void addFile(String name, byte[] content) throws IOException {
+        FileUtils.writeByteArrayToFile(new File(baseDir, name), content);
+        expected.put(name, content);
+    }
+
+    private List<String> assertContents(byte[] archive) throws IOException {
+        List<String> names = new ArrayList<String>();
+        Map<String, byte[]> actual = new HashMap<String, byte[]>();
+        TarArchiveInputStream in = new TarArchiveInputStream(new ByteArrayInputStream(archive));
+        TarArchiveEntry entry;
+        while ((entry = in.getNextTarEntry()) != null) {
+            names.add(entry.getName());
+            if (!entry.isDirectory()) {
+                actual.put(entry.getName(), IOUtils.toByteArray(in));
+            }
+        }
+        in.close();
+
+        assertEquals(actual.keySet(), expected.keySet());
+        for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+            assertEquals(actual.get(e.getKey()), e.getValue(), e.getKey());
+        }
+        return names;
+    }
+}
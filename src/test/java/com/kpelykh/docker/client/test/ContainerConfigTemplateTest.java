@@ -0,0 +1,70 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.DockerClient;
+import com.kpelykh.docker.client.model.BoundHostVolumes;
+import com.kpelykh.docker.client.model.ContainerConfig;
+import com.kpelykh.docker.client.model.ContainerConfigTemplate;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.commons.io.IOUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Tests for {@link ContainerConfigTemplate}.
+ */
+public class ContainerConfigTemplateTest extends Assert {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testMatchesConfigEncoding() throws IOException {
+        ContainerConfig config = new ContainerConfig()
+                .setImage("busybox")
+                .setMemoryLimit(1 << 20)
+                .setVolumes(new BoundHostVolumes(Arrays.asList("/tmp:/data:ro")));
+        ContainerConfigTemplate template = new ContainerConfigTemplate(config);
+        String[] env = {"INDEX=7", "QUOTE=\"a\\b\"", "UNICODE=\u00e9"};
+        String[] cmd = {"sh", "-c", "echo $INDEX"};
+
+        config.setEnv(env).setCmd(cmd);
+        assertEquals(MAPPER.readValue(template.encode(env, cmd), Map.class), MAPPER.readValue(MAPPER.writeValueAsBytes(config), Map.class));
+
+        JsonNode defaults = MAPPER.readTree(template.encode(null, null));
+        assertTrue(defaults.get("Env").isNull());
+        assertEquals(defaults.get("Image").asText(), "busybox");
+    }
+
+    @Test
+    public void testCreateContainer() throws Exception {
+        final byte[][] body = new byte[1][];
+        StandInDaemon daemon = new StandInDaemon(new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                body[0] = IOUtils.toByteArray(exchange.getRequestBody());
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(201, 0);
+                OutputStream out = exchange.getResponseBody();
+                out.write("{\"Id\":\"e90e34656806\",\"Warnings\":[]}".getBytes("UTF-8"));
+                out.close();
+            }
+        });
+        try {
+            DockerClient client = daemon.client();
+            ContainerConfigTemplate template = new ContainerConfigTemplate(new ContainerConfig().setImage("busybox"));
+
+            assertEquals(client.createContainer(template, new String[]{"N=1"}, new String[]{"true"}, "n1").getId(), "e90e34656806");
+            JsonNode sent = MAPPER.readTree(body[0]);
+            assertEquals(sent.get("Env").get(0).asText(), "N=1");
+            assertEquals(sent.get("Cmd").get(0).asText(), "true");
+        } finally {
+            daemon.stop();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.DockerClient;
+import com.kpelykh.docker.client.DockerResult;
+import com.kpelykh.docker.client.StatusException;
+import com.kpelykh.docker.client.model.ContainerInspectResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Tests the methods returning a {@link DockerResult} against a local stand-in daemon.
+ */
+public class DockerResultTest extends Assert {
+
+    @Test
+    public void testExpectedMisses() throws Exception {
+        StandInDaemon daemon = new StandInDaemon(new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                IOUtils.toByteArray(exchange.getRequestBody());
+                String path = exchange.getRequestURI().getPath();
+                if (path.equals("/v1.8/containers/8dfafdbc3a40/json")) {
+                    respond(exchange, 200, "application/json", "{\"ID\":\"8dfafdbc3a40\",\"State\":{\"Running\":true}}");
+                } else if (path.endsWith("/stop")) {
+                    respond(exchange, 304, "text/plain", null);
+                } else if (path.startsWith("/v1.8/images/busy")) {
+                    respond(exchange, 409, "text/plain", "Conflict, image is in use");
+                } else if (exchange.getRequestMethod().equals("DELETE")) {
+                    respond(exchange, 204, "text/plain", null);
+                } else {
+                    respond(exchange, 404, "text/plain", "No such container");
+                }
+            }
+        });
+        try {
+            DockerClient client = daemon.client();
+
+            DockerResult<ContainerInspectResponse> found = client.findContainer("8dfafdbc3a40");
+            assertTrue(found.isPresent());
+            assertEquals(found.getValue().getId(), "8dfafdbc3a40");
+
+            DockerResult<ContainerInspectResponse> missing = client.findContainer("missing");
+            assertFalse(missing.isPresent());
+            assertTrue(missing.isNotFound());
+            assertTrue(client.findImage("missing").isNotFound());
+
+            assertEquals(client.tryStopContainer("8dfafdbc3a40", 1).getStatus(), 304);
+            assertEquals(client.tryRemoveContainer("8dfafdbc3a40", false).getStatus(), 204);
+            try {
+                client.tryRemoveImage("busy");
+                fail();
+            } catch (StatusException e) {
+                assertEquals(e.getStatus(), 409);
+                assertTrue(e.getMessage().contains("in use"));
+                assertEquals(e.getStackTrace().length, 0);
+            }
+        } finally {
+            daemon.stop();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String type, String body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", type);
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body.getBytes("UTF-8"));
+        out.close();
+    }
+}
@@ -0,0 +1,121 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.DockerClient;
+import com.kpelykh.docker.client.NotFoundException;
+import com.kpelykh.docker.client.TransferStats;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests container export against a local stand-in that streams a large stub tar.
+ */
+public class ExportContainerTest extends Assert {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExportContainerTest.class);
+
+    private static final int EXPORT_SIZE = 32 * 1024 * 1024;
+
+    private StandInDaemon daemon;
+    private byte[] chunk;
+    private DockerClient client;
+
+    @BeforeClass
+    public void startServer() throws IOException {
+        // compressible but not trivial, repeated to fill the export
+        chunk = new byte[1024 * 1024];
+        Random random = new Random(7);
+        for (int i = 0; i < chunk.length; i++) {
+            chunk[i] = (byte) ('a' + random.nextInt(16));
+        }
+
+        daemon = new StandInDaemon(new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+                if (!exchange.getRequestURI().getPath().equals("/v1.8/containers/4f2a9c/export")) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                for (int written = 0; written < EXPORT_SIZE; written += chunk.length) {
+                    out.write(chunk);
+                }
+                out.close();
+            }
+        });
+        client = daemon.client();
+    }
+
+    @AfterClass
+    public void stopServer() {
+        daemon.stop();
+    }
+
+    @Test
+    public void testExportToFile() throws Exception {
+        File target = File.createTempFile("export", ".tar");
+        try {
+            TransferStats stats = client.exportContainer("4f2a9c", target, Deflater.NO_COMPRESSION);
+            LOG.info("Plain export: {}", stats);
+
+            assertEquals(stats.getBytesRead(), EXPORT_SIZE);
+            assertEquals(stats.getBytesWritten(), EXPORT_SIZE);
+            assertEquals(target.length(), EXPORT_SIZE);
+        } finally {
+            FileUtils.deleteQuietly(target);
+        }
+    }
+
+    @Test
+    public void testCompressedExport() throws Exception {
+        File target = File.createTempFile("export", ".tar.gz");
+        try {
+            TransferStats stats = client.exportContainer("4f2a9c", target, Deflater.BEST_SPEED);
+            LOG.info("Compressed export: {}", stats);
+
+            assertEquals(stats.getBytesRead(), EXPORT_SIZE);
+            assertEquals(stats.getBytesWritten(), target.length());
+            assertTrue(stats.getBytesWritten() < EXPORT_SIZE);
+
+            GZIPInputStream in = new GZIPInputStream(FileUtils.openInputStream(target));
+            try {
+                byte[] expected = new byte[chunk.length];
+                for (int read = 0; read < EXPORT_SIZE; read += chunk.length) {
+                    IOUtils.readFully(in, expected);
+                    assertEquals(expected, chunk);
+                }
+                assertEquals(in.read(), -1);
+            } finally {
+                in.close();
+            }
+        } finally {
+            FileUtils.deleteQuietly(target);
+        }
+    }
+
+    @Test(expectedExceptions = NotFoundException.class)
+    public void testMissingContainer() throws Exception {
+        File target = File.createTempFile("export", ".tar");
+        try {
+            client.exportContainer("missing", target, Deflater.NO_COMPRESSION);
+        } finally {
+            assertFalse(target.exists());
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.DockerClient;
+import com.kpelykh.docker.client.DockerException;
+import com.kpelykh.docker.client.ProgressListener;
+import com.kpelykh.docker.client.TransferStats;
+import com.kpelykh.docker.client.model.ImageCreateResponse;
+import com.kpelykh.docker.client.utils.ImageDigestIndex;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Tests imports against a local stand-in for the daemon's image and copy endpoints.
+ */
+public class ImportImageTest extends Assert {
+
+    private static final byte[] COPY_CHUNK = StringUtils.repeat("a", 1024).getBytes();
+
+    private StandInDaemon daemon;
+    private String query;
+    private String[] messages;
+    private List<String> requests = new ArrayList<String>();
+    private byte[] uploaded;
+    private String rejection;
+
+    @BeforeMethod
+    public void startServer() throws IOException {
+        daemon = new StandInDaemon(new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                requests.add(exchange.getRequestMethod() + " " + path);
+                if (exchange.getRequestURI().getRawQuery() != null) {
+                    query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+                }
+                if (rejection != null) {
+                    // answer without reading the body, as the daemon does for a bad request
+                    byte[] message = rejection.getBytes("UTF-8");
+                    exchange.getResponseHeaders().add("Content-Type", "text/plain");
+                    exchange.sendResponseHeaders(400, message.length);
+                    exchange.getResponseBody().write(message);
+                    exchange.close();
+                    return;
+                }
+                uploaded = IOUtils.toByteArray(exchange.getRequestBody());
+                if (path.endsWith("/copy")) {
+                    exchange.getResponseHeaders().add("Content-Type", "application/x-tar");
+                    exchange.sendResponseHeaders(200, 0);
+                    OutputStream out = exchange.getResponseBody();
+                    for (int i = 0; i < 1024; i++) {
+                        out.write(COPY_CHUNK);
+                    }
+                    out.close();
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                if (!path.endsWith("/images/create")) {
+                    // inspect and tag of an existing image
+                    exchange.sendResponseHeaders(200, 2);
+                    exchange.getResponseBody().write("{}".getBytes("UTF-8"));
+                    exchange.close();
+                    return;
+                }
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                for (String message : messages) {
+                    out.write(message.getBytes("UTF-8"));
+                    out.flush();
+                }
+                out.close();
+            }
+        });
+    }
+
+    @AfterMethod
+    public void stopServer() {
+        daemon.stop();
+        requests.clear();
+        rejection = null;
+    }
+
+    @Test
+    public void testSkipsImportOfIndexedFile() throws Exception {
+        messages = new String[]{"{\"status\":\"5d8e12f0a4c1\"}"};
+        File tar = File.createTempFile("image", ".tar");
+        File indexFile = File.createTempFile("imports", ".properties");
+        tar.deleteOnExit();
+        indexFile.deleteOnExit();
+        indexFile.delete();
+        FileUtils.writeStringToFile(tar, "not really a tar");
+
+        DockerClient client = daemon.client();
+        client.setImportIndex(new ImageDigestIndex(indexFile));
+        assertEquals(client.importImage("vendor", "1.0", tar).getId(), "5d8e12f0a4c1");
+        assertEquals(requests, Arrays.asList("POST /v1.8/images/create"));
+
+        // a fresh index read back from disk finds the image without uploading again
+        requests.clear();
+        client.setImportIndex(new ImageDigestIndex(indexFile));
+        assertEquals(client.importImage("vendor", "1.1", tar).getId(), "5d8e12f0a4c1");
+        assertEquals(requests, Arrays.asList("GET /v1.8/images/5d8e12f0a4c1/json", "POST /v1.8/images/5d8e12f0a4c1/tag"));
+        assertTrue(query.contains("tag=1.1"), query);
+
+        String digest = client.getImportIndex().getDigest(tar);
+        assertEquals(digest, "sha256:" + DigestUtils.sha256Hex("not really a tar"));
+        assertEquals(client.getImportIndex().getImageId(digest), "5d8e12f0a4c1");
+    }
+
+    @Test
+    public void testSkipsImportOfKnownContent() throws Exception {
+        messages = new String[]{"{\"status\":\"5d8e12f0a4c1\"}"};
+        File indexFile = File.createTempFile("imports", ".properties");
+        File copy = File.createTempFile("image-copy", ".tar");
+        indexFile.deleteOnExit();
+        indexFile.delete();
+        copy.deleteOnExit();
+        FileUtils.writeStringToFile(copy, "not really a tar");
+
+        DockerClient client = daemon.client();
+        client.setImportIndex(new ImageDigestIndex(indexFile));
+        assertEquals(client.importImage("vendor", "1.0", IOUtils.toInputStream("not really a tar")).getId(), "5d8e12f0a4c1");
+        assertEquals(requests, Arrays.asList("POST /v1.8/images/create"));
+
+        // a file with the content of the stream is hashed and found
+        requests.clear();
+        assertEquals(client.importImage("vendor", "1.1", copy).getId(), "5d8e12f0a4c1");
+        assertEquals(requests, Arrays.asList("GET /v1.8/images/5d8e12f0a4c1/json", "POST /v1.8/images/5d8e12f0a4c1/tag"));
+        assertEquals(client.getImportIndex().getDigest(copy), "sha256:" + DigestUtils.sha256Hex("not really a tar"));
+    }
+
+    @Test
+    public void testMalformedIndexEntryIsAMiss() throws Exception {
+        messages = new String[]{"{\"status\":\"5d8e12f0a4c1\"}"};
+        File tar = File.createTempFile("image", ".tar");
+        File indexFile = File.createTempFile("imports", ".properties");
+        tar.deleteOnExit();
+        indexFile.deleteOnExit();
+        FileUtils.writeStringToFile(tar, "not really a tar");
+        Properties corrupt = new Properties();
+        corrupt.setProperty("file." + tar.getAbsolutePath(), "16:yesterday:sha256:0000");
+        FileOutputStream out = new FileOutputStream(indexFile);
+        try {
+            corrupt.store(out, null);
+        } finally {
+            out.close();
+        }
+
+        DockerClient client = daemon.client();
+        client.setImportIndex(new ImageDigestIndex(indexFile));
+        assertNull(client.getImportIndex().getDigest(tar));
+        assertEquals(client.importImage("vendor", "1.0", tar).getId(), "5d8e12f0a4c1");
+        assertEquals(requests, Arrays.asList("POST /v1.8/images/create"));
+        assertEquals(client.getImportIndex().getDigest(tar), "sha256:" + DigestUtils.sha256Hex("not really a tar"));
+    }
+
+    @Test
+    public void testSendfileImport() throws Exception {
+        messages = new String[]{"{\"status\":\"3b1f0c9e52d7\"}"};
+        byte[] content = new byte[3 * 1024 * 1024 + 100];
+        new Random(42).nextBytes(content);
+        File tar = File.createTempFile("image", ".tar");
+        tar.deleteOnExit();
+        FileUtils.writeByteArrayToFile(tar, content);
+        final List<Long> progress = new ArrayList<Long>();
+
+        DockerClient client = daemon.client();
+        FileInputStream in = new FileInputStream(tar);
+        try {
+            // start past a header that is not part of the image
+            in.getChannel().position(100);
+            ImageCreateResponse response = client.importImage("sent", "1.0", in.getChannel(), new ProgressListener() {
+                public void progress(long bytesTransferred, long totalBytes) {
+                    assertEquals(totalBytes, 3 * 1024 * 1024);
+                    progress.add(bytesTransferred);
+                }
+            });
+            assertEquals(response.getId(), "3b1f0c9e52d7");
+            assertEquals(in.getChannel().position(), 100);
+        } finally {
+            in.close();
+        }
+
+        assertEquals(requests, Arrays.asList("POST /v1.8/images/create"));
+        assertTrue(query.contains("repo=sent"), query);
+        assertEquals(uploaded, Arrays.copyOfRange(content, 100, content.length));
+        assertFalse(progress.isEmpty());
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) > progress.get(i - 1), progress.toString());
+        }
+        assertEquals(progress.get(progress.size() - 1).longValue(), 3 * 1024 * 1024);
+    }
+
+    @Test
+    public void testSendfileImportRejected() throws Exception {
+        rejection = "invalid tar header";
+        // larger than the socket buffers, so the daemon closes the connection mid-body
+        File tar = File.createTempFile("image", ".tar");
+        tar.deleteOnExit();
+        FileUtils.writeByteArrayToFile(tar, new byte[32 * 1024 * 1024]);
+
+        DockerClient client = daemon.client();
+        try {
+            client.importImage("sent", "1.0", tar);
+            fail("import should be rejected");
+        } catch (DockerException e) {
+            assertEquals(e.getMessage(), "Import failed with status 400: invalid tar header");
+        }
+    }
+
+    @Test
+    public void testImportFromUrl() throws Exception {
+        messages = new String[]{
+                "{\"status\":\"Downloading\",\"progressDetail\":{\"current\":512,\"total\":2048}}",
+                "{\"status\":\"Downloading\",\"progressDetail\":{\"current\":2048,\"total\":2048}}\r\n",
+                "{\"status\":\"7c3f1a2b9d0e\"}"
+        };
+        final List<Long> progress = new ArrayList<Long>();
+
+        DockerClient client = daemon.client();
+        ImageCreateResponse response = client.importImage("imported", "latest", new URL("http://artifacts.local/images/base.tar"), new ProgressListener() {
+            public void progress(long bytesTransferred, long totalBytes) {
+                assertEquals(totalBytes, 2048);
+                progress.add(bytesTransferred);
+            }
+        });
+
+        assertEquals(response.getId(), "7c3f1a2b9d0e");
+        assertEquals(progress.size(), 2);
+        assertEquals(progress.get(1).longValue(), 2048);
+        assertTrue(query.contains("fromSrc=http://artifacts.local/images/base.tar"), query);
+        assertTrue(query.contains("repo=imported"), query);
+    }
+
+    @Test
+    public void testPipeFileIntoImage() throws Exception {
+        messages = new String[]{"{\"status\":\"9a1c0d33e7f2\"}"};
+
+        DockerClient client = daemon.client();
+        TransferStats stats = client.pipeFile("builder", "/out/artifacts", client, "artifacts", "42");
+
+        assertEquals(stats.getBytesRead(), 1024 * COPY_CHUNK.length);
+        assertEquals(uploaded.length, 1024 * COPY_CHUNK.length);
+        assertEquals(requests, Arrays.asList("POST /v1.8/containers/builder/copy", "POST /v1.8/images/create"));
+        assertTrue(query.contains("repo=artifacts"), query);
+    }
+
+    @Test(expectedExceptions = DockerException.class, expectedExceptionsMessageRegExp = ".*connection refused")
+    public void testDownloadError() throws Exception {
+        messages = new String[]{"{\"error\":\"Get http://artifacts.local/missing.tar: connection refused\"}"};
+
+        DockerClient client = daemon.client();
+        client.importImage("imported", null, new URL("http://artifacts.local/missing.tar"), null);
+    }
+}
@@ -0,0 +1,79 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.model.Container;
+import com.kpelykh.docker.client.utils.JsonArrayIterator;
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.RuntimeJsonMappingException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+/**
+ * Tests for {@link JsonArrayIterator}.
+ */
+public class JsonArrayIteratorTest extends Assert {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Test
+    public void testDecodesLazily() throws IOException {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i == 0 ? "" : ",").append("{\"Id\":\"c").append(i).append("\",\"Image\":\"busybox:latest\"}");
+        }
+        // never reached when stopping early
+        sb.append(",not json]");
+        final int[] closed = {0};
+        InputStream in = new ByteArrayInputStream(sb.toString().getBytes("UTF-8")) {
+            @Override
+            public void close() throws IOException {
+                closed[0]++;
+            }
+        };
+
+        JsonArrayIterator<Container> containers = new JsonArrayIterator<Container>(MAPPER, in, Container.class);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(containers.hasNext());
+            assertEquals(containers.next().getId(), "c" + i);
+        }
+        containers.close();
+        assertEquals(closed[0], 1);
+    }
+
+    @Test
+    public void testErrorKeepsCause() throws IOException {
+        final IOException reset = new IOException("Connection reset");
+        // the connection drops after the first element
+        InputStream in = new ByteArrayInputStream("[{\"Id\":\"c0\"},".getBytes("UTF-8"));
+        JsonArrayIterator<Container> containers = new JsonArrayIterator<Container>(MAPPER, new SequenceInputStream(in, new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw reset;
+            }
+        }), Container.class);
+
+        assertEquals(containers.next().getId(), "c0");
+        try {
+            containers.hasNext();
+            fail("a failed read should be thrown");
+        } catch (RuntimeJsonMappingException e) {
+            assertSame(e.getCause().getCause(), reset);
+        }
+        containers.close();
+    }
+
+    @Test
+    public void testEmptyArray() throws IOException {
+        JsonArrayIterator<Container> containers = new JsonArrayIterator<Container>(MAPPER,
+                new ByteArrayInputStream("[]".getBytes("UTF-8")), Container.class);
+        assertFalse(containers.hasNext());
+        assertFalse(containers.hasNext());
+        containers.close();
+    }
+}
@@ -0,0 +1,44 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.utils.JsonProjection;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Tests for {@link JsonProjection} on a container inspect response.
+ */
+public class JsonProjectionTest extends Assert {
+
+    private static final String INSPECT = "{\"ID\":\"4fa6e0f0c678\",\"Created\":\"2013-05-07T14:51:42Z\","
+            + "\"Config\":{\"Hostname\":\"4fa6e0f0c678\",\"Env\":null,\"Cmd\":[\"date\"],\"Volumes\":{\"/data\":{}}},"
+            + "\"State\":{\"Running\":false,\"Pid\":0,\"ExitCode\":3,\"StartedAt\":\"2013-05-07T14:51:42Z\"},"
+            + "\"NetworkSettings\":{\"IPAddress\":\"172.17.0.2\",\"Ports\":{\"22/tcp\":[{\"HostIp\":\"0.0.0.0\",\"HostPort\":\"8022\"}]}},"
+            + "\"HostConfig\":{\"Binds\":null}}";
+
+    @Test
+    public void testSelectedFields() throws IOException {
+        JsonProjection projection = new JsonProjection("State.Running", "State.ExitCode", "NetworkSettings.IPAddress",
+                "Config.Cmd", "State.Missing");
+        JsonProjection.Result result = projection.read(new ObjectMapper(), new ByteArrayInputStream(INSPECT.getBytes("UTF-8")));
+
+        assertFalse(result.getBoolean("State.Running", true));
+        assertEquals(result.getInt("State.ExitCode", -1), 3);
+        assertEquals(result.getText("NetworkSettings.IPAddress"), "172.17.0.2");
+        assertEquals(result.get("Config.Cmd").get(0).asText(), "date");
+        assertFalse(result.has("State.Missing"));
+        assertEquals(result.getValues().size(), 4);
+    }
+
+    @Test
+    public void testWholeSubtree() throws IOException {
+        JsonProjection.Result result = new JsonProjection("State", "State.Pid")
+                .read(new ObjectMapper(), new ByteArrayInputStream(INSPECT.getBytes("UTF-8")));
+
+        assertEquals(result.get("State").get("ExitCode").asInt(), 3);
+        assertFalse(result.has("State.Pid"));
+    }
+}
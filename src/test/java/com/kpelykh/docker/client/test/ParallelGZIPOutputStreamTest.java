@@ -0,0 +1,94 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.utils.ParallelGZIPOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Round-trip tests for {@link ParallelGZIPOutputStream}.
+ */
+public class ParallelGZIPOutputStreamTest extends Assert {
+
+    @Test
+    public void testRoundTripAcrossBlocks() throws IOException {
+        byte[] data = new byte[1000 * 1000];
+        Random random = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            // compressible but not trivial
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream gzip = new ParallelGZIPOutputStream(compressed, Deflater.BEST_SPEED, 4, 64 * 1024);
+        gzip.write(data, 0, 100);
+        gzip.write(data, 100, data.length - 100);
+        gzip.close();
+
+        assertEquals(gzip.getBytesIn(), data.length);
+        assertEquals(gzip.getBytesOut(), compressed.size());
+        assertTrue(compressed.size() < data.length);
+        assertEquals(gunzip(compressed.toByteArray()), data);
+    }
+
+    @Test
+    public void testEmptyInputIsValidGzip() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGZIPOutputStream(compressed, Deflater.DEFAULT_COMPRESSION, 2).close();
+
+        assertEquals(gunzip(compressed.toByteArray()).length, 0);
+    }
+
+    @Test
+    public void testAbortAfterFailedWriteStopsThreads() throws Exception {
+        final boolean[] closed = {false};
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        ParallelGZIPOutputStream gzip = new ParallelGZIPOutputStream(failing, Deflater.BEST_SPEED, 2, 1024);
+        try {
+            gzip.write(new byte[64 * 1024]);
+            fail("write should fail once blocks reach the underlying stream");
+        } catch (IOException expected) {
+        }
+        gzip.abort();
+
+        assertFalse(closed[0]);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!gzip.isTerminated() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(gzip.isTerminated());
+        try {
+            gzip.write(1);
+            fail("write after abort should fail");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        return IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+    }
+}
@@ -0,0 +1,32 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.utils.PathTemplate;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for {@link PathTemplate}.
+ */
+public class PathTemplateTest extends Assert {
+
+    private static final String BASE = "http://127.0.0.1:4243/v1.8";
+    private static final String ID = "4fa6e0f0c6786287e131c3852c58a2e01cc697a68231826813597e4994f1d6e2";
+    private static final PathTemplate CONTAINER_JSON_PATH = new PathTemplate("/containers/%s/json");
+
+    @Test
+    public void testExpandMatchesFormat() {
+        assertEquals(CONTAINER_JSON_PATH.expand(BASE, ID), BASE + String.format("/containers/%s/json", ID));
+        assertEquals(CONTAINER_JSON_PATH.expand("", null), "/containers/null/json");
+        assertEquals(new PathTemplate("/images/%s").expand(BASE, "busybox"), BASE + "/images/busybox");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsTemplateWithoutPlaceholder() {
+        new PathTemplate("/containers/json");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectsTemplateWithTwoPlaceholders() {
+        new PathTemplate("/containers/%s/%s");
+    }
+}
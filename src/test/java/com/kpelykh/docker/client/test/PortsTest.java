@@ -0,0 +1,88 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.model.Container;
+import com.kpelykh.docker.client.model.HostConfig;
+import com.kpelykh.docker.client.model.Ports;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tests for decoding and encoding {@link Ports}.
+ */
+public class PortsTest extends Assert {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    public void testAllBindings() throws IOException {
+        Ports ports = MAPPER.readValue("{\"22/tcp\":[{\"HostIp\":\"0.0.0.0\",\"HostPort\":\"8022\"},"
+                + "{\"HostIp\":\"127.0.0.1\",\"HostPort\":\"9022\"}],"
+                + "\"53/udp\":[{\"HostIp\":\"0.0.0.0\",\"HostPort\":\"5353\",\"Extra\":{\"a\":[1]}}],"
+                + "\"80/tcp\":null}", Ports.class);
+
+        List<Ports.Port> bindings = ports.getBindings();
+        assertEquals(bindings.size(), 3);
+        assertEquals(bindings.get(1).getHostIp(), "127.0.0.1");
+        assertEquals(bindings.get(1).getHostPort(), "9022");
+        assertEquals(bindings.get(2).getScheme(), "udp");
+        assertEquals(bindings.get(2).getPort(), "53");
+        assertEquals(ports.getAllPorts().get("22").getHostPort(), "8022");
+        assertFalse(ports.getAllPorts().containsKey("80"));
+
+        Ports copy = MAPPER.readValue(MAPPER.writeValueAsString(ports), Ports.class);
+        assertEquals(copy.getBindings().size(), 3);
+        assertEquals(copy.getBindings().get(1).getHostPort(), "9022");
+    }
+
+    @Test
+    public void testAddPortReplacesSameBinding() throws IOException {
+        Ports ports = new Ports();
+        ports.addPort(new Ports.Port("tcp", "8080", "0.0.0.0", "80"));
+        ports.addPort(new Ports.Port("tcp", "8080", "0.0.0.0", "8000"));
+        ports.addPort(new Ports.Port("tcp", "8080", "127.0.0.1", "9000"));
+        ports.addPort(new Ports.Port("udp", "8080", "0.0.0.0", "80"));
+
+        List<Ports.Port> bindings = ports.getBindings();
+        assertEquals(bindings.size(), 3);
+        assertEquals(bindings.get(0).getHostPort(), "8000");
+        assertEquals(bindings.get(1).getHostIp(), "127.0.0.1");
+        assertEquals(bindings.get(2).getScheme(), "udp");
+        // the first binding of the port, as when decoding
+        assertEquals(ports.getAllPorts().get("8080").getHostPort(), "8000");
+
+        String json = MAPPER.writeValueAsString(ports);
+        assertEquals(json, "{\"8080/tcp\":[{\"HostIp\":\"0.0.0.0\",\"HostPort\":\"8000\"},"
+                + "{\"HostIp\":\"127.0.0.1\",\"HostPort\":\"9000\"}],"
+                + "\"8080/udp\":[{\"HostIp\":\"0.0.0.0\",\"HostPort\":\"80\"}]}");
+    }
+
+    @Test
+    public void testSkipsElementsThatAreNotBindings() throws IOException {
+        HostConfig hostConfig = MAPPER.readValue("{\"PortBindings\":{\"22/tcp\":[null,{\"HostIp\":\"0.0.0.0\",\"HostPort\":\"8022\"},[1]],"
+                + "\"53/udp\":[{\"HostPort\":\"5353\"}]},\"Privileged\":true}", HostConfig.class);
+        assertEquals(hostConfig.getPortBindings().getBindings().size(), 2);
+        assertEquals(hostConfig.getPortBindings().getAllPorts().get("22").getHostPort(), "8022");
+        assertTrue(hostConfig.isPrivileged());
+
+        Container container = MAPPER.readValue("{\"Ports\":[null,{\"PrivatePort\":22,\"Type\":\"tcp\"},\"x\"],\"Status\":\"Up\"}", Container.class);
+        assertEquals(container.getPorts().getBindings().size(), 1);
+        assertEquals(container.getStatus(), "Up");
+    }
+
+    @Test
+    public void testListingForm() throws IOException {
+        Container container = MAPPER.readValue("{\"Id\":\"c1\",\"Ports\":[{\"PrivatePort\":22,\"PublicPort\":8022,"
+                + "\"Type\":\"tcp\",\"IP\":\"0.0.0.0\"},{\"PrivatePort\":53,\"Type\":\"udp\"}],\"Status\":\"Up\"}", Container.class);
+
+        List<Ports.Port> bindings = container.getPorts().getBindings();
+        assertEquals(bindings.size(), 2);
+        assertEquals(bindings.get(0).getHostPort(), "8022");
+        assertEquals(bindings.get(1).getScheme(), "udp");
+        assertNull(bindings.get(1).getHostPort());
+        assertEquals(container.getStatus(), "Up");
+    }
+}
@@ -0,0 +1,158 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.DockerClient;
+import com.kpelykh.docker.client.DockerException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.commons.io.IOUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests image propagation between local stand-ins for daemons that keep one saved image.
+ */
+public class PropagateImageTest extends Assert {
+
+    private List<FakeDaemon> daemons = new ArrayList<FakeDaemon>();
+
+    @AfterMethod
+    public void stopDaemons() {
+        for (FakeDaemon daemon : daemons) {
+            daemon.server.stop();
+        }
+        daemons.clear();
+    }
+
+    @Test
+    public void testPropagatesAsTree() throws Exception {
+        byte[] image = randomImage(3 * 1024 * 1024 + 17);
+        FakeDaemon origin = start(false);
+        origin.image = image;
+        List<FakeDaemon> targets = new ArrayList<FakeDaemon>();
+        List<DockerClient> clients = new ArrayList<DockerClient>();
+        for (int i = 0; i < 8; i++) {
+            FakeDaemon target = start(false);
+            targets.add(target);
+            clients.add(target.client());
+        }
+
+        Map<DockerClient, DockerException> failures = origin.client().propagateImage("busybox", clients, 2);
+
+        assertTrue(failures.isEmpty(), failures.toString());
+        int saves = origin.saves.get();
+        for (FakeDaemon target : targets) {
+            assertEquals(target.image, image);
+            saves += target.saves.get();
+        }
+        // a round from the origin alone, then one from the origin and its two children
+        assertEquals(origin.saves.get(), 2);
+        assertEquals(saves, 4);
+    }
+
+    @Test
+    public void testFailedTargetDoesNotStopOthers() throws Exception {
+        byte[] image = randomImage(512 * 1024);
+        FakeDaemon origin = start(false);
+        origin.image = image;
+        FakeDaemon broken = start(true);
+        FakeDaemon healthy = start(false);
+        List<DockerClient> clients = new ArrayList<DockerClient>();
+        DockerClient brokenClient = broken.client();
+        clients.add(brokenClient);
+        clients.add(healthy.client());
+
+        Map<DockerClient, DockerException> failures = origin.client().propagateImage("busybox", clients, 2);
+
+        assertEquals(failures.keySet().size(), 1);
+        assertTrue(failures.containsKey(brokenClient));
+        assertEquals(healthy.image, image);
+    }
+
+    @Test
+    public void testUnreachableSourceFailsOnlyItsChildren() throws Exception {
+        byte[] image = randomImage(256 * 1024);
+        FakeDaemon origin = start(false);
+        origin.image = image;
+        // loads fine in the first round, then drops the connection when asked to save
+        FakeDaemon unreachable = start(false);
+        unreachable.dropSaves = true;
+        List<FakeDaemon> targets = new ArrayList<FakeDaemon>();
+        List<DockerClient> clients = new ArrayList<DockerClient>();
+        clients.add(unreachable.client());
+        for (int i = 0; i < 5; i++) {
+            FakeDaemon target = start(false);
+            targets.add(target);
+            clients.add(target.client());
+        }
+
+        // round 1: origin -> unreachable, t0; round 2: origin -> t1, t2; unreachable -> t3, t4
+        Map<DockerClient, DockerException> failures = origin.client().propagateImage("busybox", clients, 2);
+
+        assertEquals(failures.keySet(), new HashSet<DockerClient>(clients.subList(4, 6)));
+        for (FakeDaemon target : targets.subList(0, 3)) {
+            assertEquals(target.image, image);
+        }
+        // the aborted upload may have reached the stand-in, but never whole
+        assertFalse(Arrays.equals(targets.get(3).image, image));
+    }
+
+    private static byte[] randomImage(int size) {
+        // printable, so test output stays readable if wire logging captures a body
+        byte[] image = new byte[size];
+        Random random = new Random(size);
+        for (int i = 0; i < size; i++) {
+            image[i] = (byte) ('a' + random.nextInt(26));
+        }
+        return image;
+    }
+
+    private FakeDaemon start(boolean failLoads) throws IOException {
+        FakeDaemon daemon = new FakeDaemon(failLoads);
+        daemons.add(daemon);
+        return daemon;
+    }
+
+    private static class FakeDaemon {
+        final StandInDaemon server;
+        final AtomicInteger saves = new AtomicInteger();
+        volatile byte[] image;
+        volatile boolean dropSaves = false;
+
+        FakeDaemon(final boolean failLoads) throws IOException {
+            server = new StandInDaemon(new HttpHandler() {
+                public void handle(HttpExchange exchange) throws IOException {
+                    String path = exchange.getRequestURI().getPath();
+                    exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+                    if (path.equals("/v1.8/images/busybox/get") && dropSaves) {
+                        exchange.close();
+                        return;
+                    } else if (path.equals("/v1.8/images/busybox/get") && image != null) {
+                        saves.incrementAndGet();
+                        exchange.sendResponseHeaders(200, image.length);
+                        exchange.getResponseBody().write(image);
+                    } else if (path.equals("/v1.8/images/load") && !failLoads) {
+                        image = IOUtils.toByteArray(exchange.getRequestBody());
+                        exchange.sendResponseHeaders(200, -1);
+                    } else {
+                        exchange.sendResponseHeaders(500, -1);
+                    }
+                    exchange.close();
+                }
+            });
+        }
+
+        DockerClient client() {
+            return server.client();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.DockerClient;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local HTTP server on a free port that stands in for the daemon in tests, passing every
+ * request to one handler. Request paths start with the client's version prefix, and
+ * responses need a Content-Type for the client's filters.
+ */
+public class StandInDaemon {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts a stand-in handling one request at a time.
+     */
+    public StandInDaemon(HttpHandler handler) throws IOException {
+        this(handler, false);
+    }
+
+    /**
+     * Starts a stand-in.
+     *
+     * @param handler handler of every request
+     * @param concurrent whether requests are handled concurrently, for daemons that are slow to answer
+     */
+    public StandInDaemon(HttpHandler handler, boolean concurrent) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = concurrent ? Executors.newCachedThreadPool() : null;
+        server.setExecutor(executor);
+        server.createContext("/", handler);
+        server.start();
+    }
+
+    /**
+     * @return a new client of this stand-in
+     */
+    public DockerClient client() {
+        return new DockerClient("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    /**
+     * Stops the server without waiting for exchanges in progress.
+     */
+    public void stop() {
+        server.stop(0);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
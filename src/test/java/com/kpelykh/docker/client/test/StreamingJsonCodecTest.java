@@ -0,0 +1,87 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.DockerClient;
+import com.kpelykh.docker.client.model.Container;
+import com.kpelykh.docker.client.model.ContainerConfig;
+import com.kpelykh.docker.client.model.Image;
+import com.kpelykh.docker.client.utils.StreamingJsonCodec;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.commons.io.IOUtils;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests {@link StreamingJsonCodec} against Jackson's encoding and through a client talking
+ * to a local stand-in daemon.
+ */
+public class StreamingJsonCodecTest extends Assert {
+
+    private static final String CONTAINERS = "[{\"Id\":\"8dfafdbc3a40\",\"Image\":\"base:latest\",\"Command\":\"echo 1\","
+            + "\"Created\":1367854155,\"Status\":\"Exit 0\",\"Ports\":[{\"PrivatePort\":2222,\"PublicPort\":3333,\"Type\":\"tcp\"}],"
+            + "\"SizeRw\":12288,\"SizeRootFs\":0,\"Names\":[\"/boring_feynman\"],\"Labels\":{\"a\":[1,2]}},"
+            + "{\"Id\":\"9cd87474be90\",\"Image\":\"base:latest\",\"Command\":null,\"Created\":1367854154,\"Ports\":null}]";
+
+    private static final String IMAGES = "[{\"RepoTags\":[\"ubuntu:12.04\",\"ubuntu:latest\"],\"Id\":\"8dbd9e392a96\","
+            + "\"Created\":1365714795,\"Size\":131506275,\"VirtualSize\":131506275,\"Extra\":null}]";
+
+    @Test
+    public void testEncodesLikeJackson() throws IOException {
+        ContainerConfig config = new ContainerConfig().setImage("busybox").setCmd(new String[]{"echo", "\"hi\""})
+                .setMemoryLimit(1 << 20).setTty(true);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamingJsonCodec().encode(config, out);
+        assertEquals(out.toString("UTF-8"), new ObjectMapper().writeValueAsString(config));
+
+        out.reset();
+        new StreamingJsonCodec(true).encode(config, out);
+        assertEquals(out.toString("UTF-8"), "{\"Tty\":true,\"Memory\":1048576,\"Cmd\":[\"echo\",\"\\\"hi\\\"\"],\"Image\":\"busybox\"}");
+    }
+
+    @Test
+    public void testClientUsesCodec() throws Exception {
+        final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+        StandInDaemon daemon = new StandInDaemon(new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                bodies.add(IOUtils.toString(exchange.getRequestBody(), "UTF-8"));
+                String path = exchange.getRequestURI().getPath();
+                String body = path.endsWith("/create") ? "{\"Id\":\"e90e34656806\"}"
+                        : path.startsWith("/v1.8/images") ? IMAGES : CONTAINERS;
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body.getBytes("UTF-8"));
+                out.close();
+            }
+        });
+        try {
+            DockerClient client = daemon.client();
+            client.setJsonCodec(new StreamingJsonCodec(true));
+
+            List<Container> containers = client.listContainers(true);
+            assertEquals(containers.size(), 2);
+            assertEquals(containers.get(0).getNames()[0], "/boring_feynman");
+            assertEquals(containers.get(0).getPorts().getBindings().get(0).getHostPort(), "3333");
+            assertEquals(containers.get(0).getSize(), 12288);
+            assertNull(containers.get(1).getCommand());
+
+            List<Image> images = client.getImages(null, false);
+            assertEquals(images.get(0).getRepoTags()[1], "ubuntu:latest");
+            assertEquals(images.get(0).getVirtualSize(), 131506275L);
+
+            client.createContainer(new ContainerConfig().setImage("busybox"));
+            assertEquals(bodies.get(bodies.size() - 1), "{\"Image\":\"busybox\"}");
+        } finally {
+            daemon.stop();
+        }
+    }
+}
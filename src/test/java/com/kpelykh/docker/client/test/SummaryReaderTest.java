@@ -0,0 +1,78 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.model.ContainerSummary;
+import com.kpelykh.docker.client.model.ImageSummary;
+import com.kpelykh.docker.client.model.PackedId;
+import com.kpelykh.docker.client.utils.StringPool;
+import com.kpelykh.docker.client.utils.SummaryReader;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for the compact listing models and {@link SummaryReader}.
+ */
+public class SummaryReaderTest extends Assert {
+
+    private static final String ID = "8dfafdbc3a40d8b3e15d1aa8e9d64a0b0f7a2b2e0d3c4b5a69788796a5b4c3d2";
+
+    @Test
+    public void testPackedId() {
+        PackedId id = PackedId.of(ID);
+        assertEquals(id.toString(), ID);
+        assertEquals(id, PackedId.of(new String(ID)));
+        assertEquals(id.hashCode(), PackedId.of(ID).hashCode());
+        assertTrue(id.startsWith("8dfafdbc3a40"));
+
+        assertEquals(PackedId.of("8dfafdbc3a40").toString(), "8dfafdbc3a40");
+        assertFalse(PackedId.of("8dfafdbc3a40").equals(PackedId.of("8dfafdbc3a400")));
+        assertEquals(PackedId.of("boring_feynman").toString(), "boring_feynman");
+        assertEquals(PackedId.of("0000").toString(), "0000");
+        assertFalse(PackedId.of("0000").equals(PackedId.of("000")));
+    }
+
+    @Test
+    public void testSharesRepeatedStrings() throws IOException {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            sb.append(i == 0 ? "" : ",").append("{\"Id\":\"").append(ID.substring(0, 60)).append(String.format("%04x", i))
+                    .append("\",\"Image\":\"base:latest\",\"Command\":\"echo 1\",\"Created\":1367854155,\"Status\":\"Exit 0\","
+                            + "\"Ports\":[],\"SizeRw\":12288,\"Names\":[\"/c").append(i).append("\"],\"Extra\":{\"a\":1}}");
+        }
+        sb.append("]");
+
+        List<ContainerSummary> containers = new SummaryReader(new StringPool(64))
+                .readContainers(new ByteArrayInputStream(sb.toString().getBytes("UTF-8")));
+        assertEquals(containers.size(), 100);
+        Set<PackedId> ids = new HashSet<PackedId>();
+        Set<Integer> hashes = new HashSet<Integer>();
+        for (ContainerSummary container : containers) {
+            ids.add(container.getId());
+            hashes.add(container.getId().hashCode());
+            assertSame(container.getImage(), containers.get(0).getImage());
+            assertSame(container.getCommand(), containers.get(0).getCommand());
+        }
+        assertEquals(ids.size(), 100);
+        // the ids share their first 60 digits
+        assertEquals(hashes.size(), 100);
+        assertEquals(containers.get(99).getId().toString(), ID.substring(0, 60) + "0063");
+        assertEquals(containers.get(99).getNames()[0], "/c99");
+        assertEquals(containers.get(0).getSize(), 12288);
+    }
+
+    @Test
+    public void testImages() throws IOException {
+        List<ImageSummary> images = new SummaryReader(new StringPool(16)).readImages(new ByteArrayInputStream(
+                ("[{\"RepoTags\":[\"ubuntu:12.04\",\"ubuntu:latest\"],\"Id\":\"" + ID + "\",\"ParentId\":\"\","
+                        + "\"Created\":1365714795,\"Size\":131506275,\"VirtualSize\":131506275}]").getBytes("UTF-8")));
+        assertEquals(images.get(0).getId(), PackedId.of(ID));
+        assertEquals(images.get(0).getParentId().toString(), "");
+        assertEquals(images.get(0).getRepoTags()[1], "ubuntu:latest");
+        assertEquals(images.get(0).getVirtualSize(), 131506275L);
+    }
+}
@@ -0,0 +1,111 @@
+package com.kpelykh.docker.client.test;
+
+import com.kpelykh.docker.client.utils.TarExtractor;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link TarExtractor}.
+ */
+public class TarExtractorTest extends Assert {
+
+    private File targetDir;
+
+    @BeforeMethod
+    public void createTarget() throws IOException {
+        targetDir = File.createTempFile("extract", "");
+        targetDir.delete();
+    }
+
+    @AfterMethod
+    public void deleteTarget() {
+        FileUtils.deleteQuietly(targetDir);
+    }
+
+    @Test
+    public void testParallelExtraction() throws IOException {
+        byte[] large = new byte[300 * 1024];
+        Arrays.fill(large, (byte) 'x');
+        byte[] tar = tar(
+                dir("results/"),
+                file("results/run.sh", "#!/bin/sh\n".getBytes(), 0755),
+                file("results/large.bin", large, 0644),
+                file("results/logs/1.log", "one".getBytes(), 0644),
+                file("results/logs/2.log", "two".getBytes(), 0644),
+                link("results/logs/copy.log", "results/logs/1.log"));
+
+        TarExtractor extractor = new TarExtractor(targetDir).setThreads(4).setBufferedFileSize(64 * 1024).setBufferedBytes(8);
+        extractor.extract(new ByteArrayInputStream(tar));
+
+        assertEquals(extractor.getFilesExtracted(), 5);
+        assertEquals(FileUtils.readFileToByteArray(new File(targetDir, "results/large.bin")), large);
+        assertEquals(FileUtils.readFileToString(new File(targetDir, "results/logs/2.log")), "two");
+        assertEquals(FileUtils.readFileToString(new File(targetDir, "results/logs/copy.log")), "one");
+        assertTrue(new File(targetDir, "results/run.sh").canExecute());
+    }
+
+    @Test
+    public void testIncludes() throws IOException {
+        byte[] tar = tar(
+                file("results/summary.txt", "ok".getBytes(), 0644),
+                file("results/logs/1.log", "one".getBytes(), 0644),
+                file("results/tmp/scratch", "junk".getBytes(), 0644));
+
+        TarExtractor extractor = new TarExtractor(targetDir).setIncludes("results/logs", "*.txt");
+        extractor.extract(new ByteArrayInputStream(tar));
+
+        assertEquals(extractor.getFilesExtracted(), 2);
+        assertTrue(new File(targetDir, "results/summary.txt").isFile());
+        assertTrue(new File(targetDir, "results/logs/1.log").isFile());
+        assertFalse(new File(targetDir, "results/tmp").exists());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testRejectsEscapingEntries() throws IOException {
+        byte[] tar = tar(file("results/../../escaped", "x".getBytes(), 0644));
+        new TarExtractor(targetDir).extract(new ByteArrayInputStream(tar));
+    }
+
+    private static Object[] dir(String name) {
+        return new Object[]{new TarArchiveEntry(name), null};
+    }
+
+    private static Object[] file(String name, byte[] data, int mode) {
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(data.length);
+        entry.setMode(mode);
+        return new Object[]{entry, data};
+    }
+
+    private static Object[] link(String name, String target) {
+        TarArchiveEntry entry = new TarArchiveEntry(name, TarConstants.LF_LINK);
+        entry.setLinkName(target);
+        return new Object[]{entry, null};
+    }
+
+    private static byte[] tar(Object[]... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TarArchiveOutputStream out = new TarArchiveOutputStream(bytes);
+        for (Object[] entry : entries) {
+            out.putArchiveEntry((TarArchiveEntry) entry[0]);
+            if (entry[1] != null) {
+                out.write((byte[]) entry[1]);
+            }
+            out.closeArchiveEntry();
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,78 @@
+package com.kpelykh.docker.client.test;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.kpelykh.docker.client.DockerClient;
+import com.kpelykh.docker.client.utils.WireLoggingFilter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link WireLoggingFilter} sampling and entity capture against a local stand-in daemon.
+ */
+public class WireLoggingFilterTest extends Assert {
+
+    @Test
+    public void testSamplingAndCapture() throws Exception {
+        StandInDaemon daemon = new StandInDaemon(new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                IOUtils.toByteArray(exchange.getRequestBody());
+                boolean save = exchange.getRequestURI().getPath().endsWith("/get");
+                exchange.getResponseHeaders().add("Content-Type", save ? "application/x-tar" : "application/json");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                out.write((save ? "tar-bytes-tar-bytes-tar-bytes" : "[{\"Id\":\"8dfafdbc3a40\",\"Image\":\"base:latest\"}]").getBytes("UTF-8"));
+                out.close();
+            }
+        });
+
+        Logger wire = (Logger) LoggerFactory.getLogger("com.kpelykh.docker.client.wire");
+        ListAppender<ILoggingEvent> appender = new ListAppender<ILoggingEvent>();
+        appender.start();
+        wire.addAppender(appender);
+        try {
+            DockerClient client = daemon.client();
+            client.getWireLogger().setSampleRate("/containers", 0.5);
+            client.getWireLogger().setSampleRate("/containers/json", 0.25);
+            client.getWireLogger().setMaxEntityBytes(16);
+
+            for (int i = 0; i < 8; i++) {
+                client.listContainers(true);
+            }
+            IOUtils.toByteArray(client.saveImage("base").getEntityInputStream());
+
+            List<String> messages = new ArrayList<String>();
+            for (ILoggingEvent event : appender.list) {
+                messages.add(event.getFormattedMessage());
+            }
+            assertEquals(count(messages, "> GET"), 3, messages.toString());
+            assertEquals(count(messages, "/images/base/get"), 1, messages.toString());
+            assertEquals(count(messages, "/containers/json"), 2, messages.toString());
+            assertTrue(messages.contains("1 < [{\"Id\":\"8dfafdbc... (45 bytes)"), messages.toString());
+            assertEquals(count(messages, "tar-bytes"), 0, messages.toString());
+        } finally {
+            wire.detachAppender(appender);
+            daemon.stop();
+        }
+    }
+
+    private static int count(List<String> messages, String text) {
+        int count = 0;
+        for (String message : messages) {
+            if (message.contains(text)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}